@@ -0,0 +1,94 @@
+import hr.fer.zemris.avsp.bench.SimHashPipeline;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+// Binds the benchmark stages to the default-package lab classes.
+public class SimHashPipelineImpl implements SimHashPipeline {
+
+    private String[] texts;
+    private int[][] queries;
+    private BandKeys bandKeys;
+    private String hasher;
+    private String[] terms;
+    private TermHasher termHasher;
+    private Fingerprints hashes;
+    private BandIndex buckets;
+    private MultiIndexHamming multiIndex;
+    private int[] seen;
+
+    @Override
+    public void load(String[] texts, int[][] queries, int bands, String hasher) {
+        this.texts = texts;
+        this.queries = queries;
+        this.bandKeys = new BandKeys(bands, Math.min(Fingerprints.BITS / bands, BandKeys.MAX_ROWS));
+        this.hasher = hasher;
+        Set<String> distinct = new LinkedHashSet<>();
+        for (String text : texts) {
+            distinct.addAll(Arrays.asList(text.split("\\s+")));
+        }
+        this.terms = distinct.toArray(String[]::new);
+        this.termHasher = TermHasher.factory(hasher).get();
+        this.hashes = fingerprinter().fingerprint(texts);
+        this.buckets = BandIndex.build(hashes, bandKeys);
+        this.multiIndex = new MultiIndexHamming(hashes);
+        this.seen = new int[hashes.size()];
+    }
+
+    @Override
+    public long termHashes() {
+        long sum = 0;
+        for (String term : terms) {
+            sum += termHasher.hash(term)[0];
+        }
+        return sum;
+    }
+
+    @Override
+    public long simHash() {
+        Fingerprints fingerprints = fingerprinter().fingerprint(texts);
+        return fingerprints.lo(fingerprints.size() - 1);
+    }
+
+    @Override
+    public long hammingDistances(int[] pairs) {
+        long sum = 0;
+        for (int i = 0; i < pairs.length; i += 2) {
+            sum += hashes.hammingDistance(pairs[i], pairs[i + 1]);
+        }
+        return sum;
+    }
+
+    @Override
+    public long lsh() {
+        BandIndex index = BandIndex.build(hashes, bandKeys);
+        return System.identityHashCode(index);
+    }
+
+    @Override
+    public long lshQueries() {
+        long sum = 0;
+        for (int i = 0; i < queries.length; i++) {
+            int I = queries[i][0];
+            // Stamps are unique per query within a run, the array is cleared between runs.
+            sum += buckets.countWithin(hashes, I, hashes.lo(I), hashes.hi(I), queries[i][1], seen, i + 1);
+        }
+        Arrays.fill(seen, 0);
+        return sum;
+    }
+
+    @Override
+    public long exactQueries() {
+        long sum = 0;
+        for (int[] query : queries) {
+            sum += multiIndex.countWithin(query[0], query[1]);
+        }
+        return sum;
+    }
+
+    private SimHashFingerprinter fingerprinter() {
+        return new SimHashFingerprinter(1, SimHashFingerprinter.DEFAULT_CACHE_SIZE, TermHasher.factory(hasher));
+    }
+
+}
@@ -0,0 +1,80 @@
+package hr.fer.zemris.avsp.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Compares a JMH CSV result file (-rf csv) against a stored baseline in the same format.
+// Prints the change of every benchmark present in both files and exits with status 1
+// when any score regressed by more than the tolerance (in percent, default 10).
+//
+// Usage: BaselineComparison <baseline.csv> <results.csv> [tolerance]
+public class BaselineComparison {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineComparison <baseline.csv> <results.csv> [tolerance]");
+            System.exit(2);
+        }
+        Map<String, Double> baseline = readScores(Path.of(args[0]));
+        Map<String, Double> results = readScores(Path.of(args[1]));
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+        boolean regressed = false;
+        for (Map.Entry<String, Double> entry : results.entrySet()) {
+            Double before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-60s %12s%n", entry.getKey(), "new");
+                continue;
+            }
+            // Every benchmark reports time per operation, so larger is slower.
+            double change = 100.0 * (entry.getValue() - before) / before;
+            boolean isRegression = change > tolerance;
+            regressed |= isRegression;
+            System.out.printf(Locale.US, "%-60s %12.3f -> %12.3f %+8.2f%%%s%n",
+                    entry.getKey(), before, entry.getValue(), change, isRegression ? "  REGRESSION" : "");
+        }
+        System.exit(regressed ? 1 : 0);
+    }
+
+    // Benchmark name plus its parameters -> score.
+    private static Map<String, Double> readScores(Path path) throws IOException {
+        List<String> lines = Files.readAllLines(path);
+        String[] header = parseCsvLine(lines.get(0));
+        int benchmark = indexOf(header, "Benchmark");
+        int score = indexOf(header, "Score");
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isBlank()) continue;
+            String[] cells = parseCsvLine(line);
+            StringBuilder key = new StringBuilder(cells[benchmark]);
+            for (int i = 0; i < header.length; i++) {
+                if (header[i].startsWith("Param: ")) {
+                    key.append(' ').append(header[i].substring(7)).append('=').append(cells[i]);
+                }
+            }
+            scores.put(key.toString(), Double.parseDouble(cells[score]));
+        }
+        return scores;
+    }
+
+    private static int indexOf(String[] header, String column) {
+        for (int i = 0; i < header.length; i++) {
+            if (header[i].equals(column)) return i;
+        }
+        throw new IllegalArgumentException("Missing CSV column: " + column);
+    }
+
+    // JMH quotes every cell and never embeds quotes or commas in them.
+    private static String[] parseCsvLine(String line) {
+        String[] cells = line.split(",", -1);
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = cells[i].strip().replace("\"", "");
+        }
+        return cells;
+    }
+
+}
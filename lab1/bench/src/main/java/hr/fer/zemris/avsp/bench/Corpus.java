@@ -0,0 +1,73 @@
+package hr.fer.zemris.avsp.bench;
+
+import java.util.Random;
+
+// Generated SimHash input: texts drawn from a Zipf-like vocabulary, a share of them being
+// near duplicates of earlier texts, plus (I, K) queries.
+public final class Corpus {
+
+    private static final double NEAR_DUPLICATES = 0.3;
+    private static final double EDITS = 0.1;
+
+    public final String[] texts;
+    public final int[][] queries;
+
+    private Corpus(String[] texts, int[][] queries) {
+        this.texts = texts;
+        this.queries = queries;
+    }
+
+    public static Corpus generate(int docs, int vocabulary, int docLength, int queries, int maxK, long seed) {
+        Random random = new Random(seed);
+        String[] terms = new String[vocabulary];
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = "t" + Integer.toString(i, 36);
+        }
+        // Cumulative Zipf(1) weights, sampled by binary search.
+        double[] cumulative = new double[vocabulary];
+        double sum = 0;
+        for (int i = 0; i < vocabulary; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        String[][] words = new String[docs][];
+        String[] texts = new String[docs];
+        for (int d = 0; d < docs; d++) {
+            if (d > 0 && random.nextDouble() < NEAR_DUPLICATES) {
+                words[d] = words[random.nextInt(d)].clone();
+                for (int w = 0; w < words[d].length; w++) {
+                    if (random.nextDouble() < EDITS) {
+                        words[d][w] = sample(terms, cumulative, random);
+                    }
+                }
+            } else {
+                words[d] = new String[docLength];
+                for (int w = 0; w < docLength; w++) {
+                    words[d][w] = sample(terms, cumulative, random);
+                }
+            }
+            texts[d] = String.join(" ", words[d]);
+        }
+        int[][] qs = new int[queries][];
+        for (int q = 0; q < queries; q++) {
+            qs[q] = new int[]{random.nextInt(docs), random.nextInt(maxK + 1)};
+        }
+        return new Corpus(texts, qs);
+    }
+
+    private static String sample(String[] terms, double[] cumulative, Random random) {
+        double x = random.nextDouble() * cumulative[cumulative.length - 1];
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] < x) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return terms[low];
+    }
+
+}
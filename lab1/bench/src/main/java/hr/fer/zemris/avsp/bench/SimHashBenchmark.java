@@ -0,0 +1,107 @@
+package hr.fer.zemris.avsp.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Stage benchmarks of the SimHash pipeline on a generated corpus.
+//
+//   mvn -B package && java -jar target/benchmarks.jar SimHashBenchmark -rf csv -rff results.csv
+//   java -cp target/benchmarks.jar hr.fer.zemris.avsp.bench.BaselineComparison baseline.csv results.csv
+//
+// A baseline is simply an earlier results.csv from the same machine, kept next to the change it measures.
+// Corpus shape is set with JMH parameters, e.g. -p docs=100000 -p vocabulary=200000 -p docLength=80;
+// every stage runs with both term hashers unless one is picked, e.g. -p hasher=murmur3.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimHashBenchmark {
+
+    private static final int PAIRS = 1 << 16;
+    private static final long SEED = 42;
+
+    @Param("10000")
+    private int docs;
+
+    @Param("50000")
+    private int vocabulary;
+
+    @Param("50")
+    private int docLength;
+
+    @Param("1000")
+    private int queries;
+
+    @Param("8")
+    private int maxK;
+
+    @Param("8")
+    private int bands;
+
+    @Param({"md5", "murmur3"})
+    private String hasher;
+
+    private SimHashPipeline pipeline;
+    private int[] pairs;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Corpus corpus = Corpus.generate(docs, vocabulary, docLength, queries, maxK, SEED);
+        pipeline = SimHashPipeline.create();
+        pipeline.load(corpus.texts, corpus.queries, bands, hasher);
+        Random random = new Random(SEED);
+        pairs = new int[2 * PAIRS];
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = random.nextInt(docs);
+        }
+    }
+
+    @Benchmark
+    public long termHashes() {
+        return pipeline.termHashes();
+    }
+
+    @Benchmark
+    public long simHash() {
+        return pipeline.simHash();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long hammingDistance() {
+        return pipeline.hammingDistances(pairs);
+    }
+
+    @Benchmark
+    public long lsh() {
+        return pipeline.lsh();
+    }
+
+    @Benchmark
+    public long lshQueries() {
+        return pipeline.lshQueries();
+    }
+
+    @Benchmark
+    public long exactQueries() {
+        return pipeline.exactQueries();
+    }
+
+}
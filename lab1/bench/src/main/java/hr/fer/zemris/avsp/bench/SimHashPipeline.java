@@ -0,0 +1,37 @@
+package hr.fer.zemris.avsp.bench;
+
+// Stages of the lab1 SimHash pipeline, as seen by the benchmarks.
+// The lab classes live in the default package and cannot be referenced from here,
+// so the implementation is a default-package class loaded by name.
+public interface SimHashPipeline {
+
+    String IMPLEMENTATION = "SimHashPipelineImpl";
+
+    static SimHashPipeline create() {
+        try {
+            return (SimHashPipeline) Class.forName(IMPLEMENTATION).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load " + IMPLEMENTATION + "!", e);
+        }
+    }
+
+    // Fingerprints the texts and prepares band buckets and the multi-index for the query stages.
+    void load(String[] texts, int[][] queries, int bands, String hasher);
+
+    // Every method below returns a checksum of its work, to be consumed by the benchmark.
+
+    // Hashes every distinct term of the texts once, without the fingerprinter's term cache.
+    long termHashes();
+
+    long simHash();
+
+    // Distances between the given (i, j) fingerprint pairs.
+    long hammingDistances(int[] pairs);
+
+    long lsh();
+
+    long lshQueries();
+
+    long exactQueries();
+
+}
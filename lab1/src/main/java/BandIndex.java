@@ -0,0 +1,63 @@
+// LSH band buckets over a fingerprint store: one int-keyed table per band,
+// mapping the band key to the ids of documents that share it.
+public final class BandIndex {
+
+    private final BandKeys bandKeys;
+    private final IntListMultimap[] buckets;
+
+    public BandIndex(BandKeys bandKeys, int expectedDocs) {
+        this.bandKeys = bandKeys;
+        this.buckets = new IntListMultimap[bandKeys.bands()];
+        for (int band = 0; band < buckets.length; band++) {
+            buckets[band] = new IntListMultimap(expectedDocs);
+        }
+    }
+
+    public static BandIndex build(Fingerprints hashes, BandKeys bandKeys) {
+        BandIndex index = new BandIndex(bandKeys, hashes.size());
+        for (int id = 0; id < hashes.size(); id++) {
+            index.add(id, hashes.lo(id), hashes.hi(id));
+        }
+        return index;
+    }
+
+    public BandKeys bandKeys() {
+        return bandKeys;
+    }
+
+    public void add(int id, long lo, long hi) {
+        for (int band = 0; band < buckets.length; band++) {
+            buckets[band].put(bandKeys.key(lo, hi, band), id);
+        }
+    }
+
+    public void remove(int id, long lo, long hi) {
+        for (int band = 0; band < buckets.length; band++) {
+            buckets[band].remove(bandKeys.key(lo, hi, band), id);
+        }
+    }
+
+    // Counts documents other than id that share at least one band bucket with
+    // fingerprint (lo, hi) and are within Hamming distance k of it.
+    // seen is a per-caller scratch array of at least hashes.size() stamps and
+    // stamp must differ from every value already stored in it.
+    public int countWithin(Fingerprints hashes, int id, long lo, long hi, int k, int[] seen, int stamp) {
+        int counter = 0;
+        for (int band = 0; band < buckets.length; band++) {
+            IntListMultimap bucket = buckets[band];
+            int slot = bucket.indexOf(bandKeys.key(lo, hi, band));
+            if (slot < 0) continue;
+            int[] ids = bucket.valuesAt(slot);
+            for (int i = 0, n = bucket.lengthAt(slot); i < n; i++) {
+                int candidateId = ids[i];
+                if (candidateId == id || seen[candidateId] == stamp) continue;
+                seen[candidateId] = stamp;
+                if (Fingerprints.hammingDistance(lo, hi, hashes.lo(candidateId), hashes.hi(candidateId)) <= k) {
+                    counter++;
+                }
+            }
+        }
+        return counter;
+    }
+
+}
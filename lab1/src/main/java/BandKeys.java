@@ -0,0 +1,50 @@
+// Splits a 128-bit fingerprint into B bands of R bits each.
+// Band b covers bits [b * R, (b + 1) * R) and its key is read directly
+// from the fingerprint words with shifts and masks.
+public final class BandKeys {
+
+    public static final int MAX_ROWS = Integer.SIZE;
+
+    private final int bands;
+    private final int rows;
+    private final long mask;
+
+    public BandKeys(int bands, int rows) {
+        if (bands < 1 || rows < 1 || rows > MAX_ROWS || bands * rows > Fingerprints.BITS) {
+            throw new IllegalArgumentException(
+                    "Invalid band split B=" + bands + ", R=" + rows + " for " + Fingerprints.BITS + " bits!"
+            );
+        }
+        this.bands = bands;
+        this.rows = rows;
+        this.mask = (1L << rows) - 1;
+    }
+
+    public int bands() {
+        return bands;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int key(long lo, long hi, int band) {
+        return (int) (bits(lo, hi, band * rows) & mask);
+    }
+
+    // Fingerprint bits from start onwards (at least 64 of them, or up to the end), right-aligned.
+    public static long bits(long lo, long hi, int start) {
+        if (start >= Long.SIZE) {
+            return hi >>> (start - Long.SIZE);
+        } else if (start == 0) {
+            return lo;
+        }
+        // Range straddles both words.
+        return (lo >>> start) | (hi << (Long.SIZE - start));
+    }
+
+    public int key(Fingerprints hashes, int id, int band) {
+        return key(hashes.lo(id), hashes.hi(id), band);
+    }
+
+}
@@ -0,0 +1,91 @@
+import java.util.Arrays;
+
+// Flat store of 128-bit SimHash fingerprints.
+// Fingerprint id occupies two consecutive longs: the low word (bits 0..63)
+// followed by the high word (bits 64..127), so scans over all fingerprints
+// read memory sequentially and no per-document arrays are allocated.
+public final class Fingerprints {
+
+    public static final int BITS = 128;
+    public static final int WORDS = BITS / Long.SIZE;
+
+    private long[] words;
+    private int size;
+
+    public Fingerprints(int capacity) {
+        words = new long[Math.max(capacity, 1) * WORDS];
+    }
+
+    // Store of size zeroed fingerprints, to be filled in with set.
+    public static Fingerprints ofSize(int size) {
+        Fingerprints hashes = new Fingerprints(size);
+        hashes.size = size;
+        return hashes;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int add(long lo, long hi) {
+        ensureCapacity(size + 1);
+        int id = size++;
+        set(id, lo, hi);
+        return id;
+    }
+
+    public void set(int id, long lo, long hi) {
+        words[id * WORDS] = lo;
+        words[id * WORDS + 1] = hi;
+    }
+
+    public long lo(int id) {
+        return words[id * WORDS];
+    }
+
+    public long hi(int id) {
+        return words[id * WORDS + 1];
+    }
+
+    public int hammingDistance(int id1, int id2) {
+        return hammingDistance(lo(id1), hi(id1), lo(id2), hi(id2));
+    }
+
+    public static int hammingDistance(long lo1, long hi1, long lo2, long hi2) {
+        return Long.bitCount(lo1 ^ lo2) + Long.bitCount(hi1 ^ hi2);
+    }
+
+    // Counts fingerprints other than id within Hamming distance k of fingerprint id, by a linear scan.
+    public int countWithin(int id, int k) {
+        long lo = lo(id);
+        long hi = hi(id);
+        int counter = 0;
+        for (int i = 0, w = 0; i < size; i++, w += WORDS) {
+            if (i != id && hammingDistance(lo, hi, words[w], words[w + 1]) <= k) {
+                counter++;
+            }
+        }
+        return counter;
+    }
+
+    // Packs per-bit SimHash sums into fingerprint id: bit i is set when sums[i] >= 0.
+    public void setFromSums(int id, int[] sums) {
+        if (sums.length != BITS) {
+            throw new IllegalArgumentException("Expected " + BITS + " sums, got " + sums.length + "!");
+        }
+        long lo = 0;
+        long hi = 0;
+        for (int i = 0; i < Long.SIZE; i++) {
+            if (sums[i] >= 0) lo |= 1L << i;
+            if (sums[i + Long.SIZE] >= 0) hi |= 1L << i;
+        }
+        set(id, lo, hi);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity * WORDS > words.length) {
+            words = Arrays.copyOf(words, Math.max(words.length * 2, capacity * WORDS));
+        }
+    }
+
+}
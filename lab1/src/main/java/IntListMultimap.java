@@ -0,0 +1,128 @@
+import java.util.Arrays;
+
+// Open-addressing map from int keys to growable lists of int values.
+// Used for LSH band buckets, so bucketing neither boxes keys nor ids.
+public final class IntListMultimap {
+
+    private int[] keys;
+    private int[][] values;
+    private int[] sizes;
+    private int size;
+
+    public IntListMultimap(int expectedKeys) {
+        int capacity = Integer.highestOneBit(Math.max(expectedKeys, 8) * 2 - 1) << 1;
+        keys = new int[capacity];
+        values = new int[capacity][];
+        sizes = new int[capacity];
+    }
+
+    // Number of distinct keys.
+    public int size() {
+        return size;
+    }
+
+    public void put(int key, int value) {
+        int slot = slot(key);
+        if (values[slot] == null) {
+            keys[slot] = key;
+            values[slot] = new int[2];
+            if (++size * 2 > keys.length) {
+                rehash();
+                slot = slot(key);
+            }
+        }
+        int[] list = values[slot];
+        int n = sizes[slot];
+        if (n == list.length) {
+            values[slot] = list = Arrays.copyOf(list, n * 2);
+        }
+        list[n] = value;
+        sizes[slot] = n + 1;
+    }
+
+    // Removes one occurrence of value from key's list, dropping the key once its list is empty.
+    // Order of the remaining values is not preserved.
+    public boolean remove(int key, int value) {
+        int slot = indexOf(key);
+        if (slot < 0) return false;
+        int[] list = values[slot];
+        int n = sizes[slot];
+        for (int i = 0; i < n; i++) {
+            if (list[i] == value) {
+                list[i] = list[--n];
+                sizes[slot] = n;
+                if (n == 0) {
+                    deleteSlot(slot);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Slot of key, or -1 if the key is absent.
+    public int indexOf(int key) {
+        int slot = slot(key);
+        return values[slot] == null ? -1 : slot;
+    }
+
+    // Values stored in slot; only the first lengthAt(slot) entries are valid.
+    public int[] valuesAt(int slot) {
+        return values[slot];
+    }
+
+    public int lengthAt(int slot) {
+        return sizes[slot];
+    }
+
+    private int slot(int key) {
+        int m = keys.length - 1;
+        int slot = mix(key) & m;
+        while (values[slot] != null && keys[slot] != key) {
+            slot = (slot + 1) & m;
+        }
+        return slot;
+    }
+
+    // Backward-shift deletion, so lookups never need tombstones.
+    private void deleteSlot(int slot) {
+        int m = keys.length - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & m; values[next] != null; next = (next + 1) & m) {
+            int home = mix(keys[next]) & m;
+            // Move the entry into the hole unless its home lies cyclically in (hole, next].
+            if (((next - home) & m) >= ((next - hole) & m)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                sizes[hole] = sizes[next];
+                hole = next;
+            }
+        }
+        values[hole] = null;
+        sizes[hole] = 0;
+        size--;
+    }
+
+    private void rehash() {
+        int[] oldKeys = keys;
+        int[][] oldValues = values;
+        int[] oldSizes = sizes;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2][];
+        sizes = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                sizes[slot] = oldSizes[i];
+            }
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+}
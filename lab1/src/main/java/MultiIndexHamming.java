@@ -0,0 +1,114 @@
+import java.util.Arrays;
+
+// Multi-index hashing for exact Hamming range counting.
+//
+// The fingerprint is split into m disjoint blocks, each indexed by an int-keyed table.
+// By the pigeonhole principle, two fingerprints within distance K agree on at least one block
+// up to floor(K / m) bits, so only the keys within that radius of the query's block keys
+// have to be probed. Candidates are then verified with the exact popcount distance.
+// When probing would touch more keys than there are documents, a linear scan is used instead.
+public final class MultiIndexHamming {
+
+    private final Fingerprints hashes;
+    private final int[] offsets;
+    private final int[] widths;
+    private final IntListMultimap[] tables;
+    private int[] seen;
+    private int stamp;
+
+    public MultiIndexHamming(Fingerprints hashes) {
+        this(hashes, defaultBlocks(hashes.size()));
+    }
+
+    public MultiIndexHamming(Fingerprints hashes, int blocks) {
+        if (blocks * Integer.SIZE < Fingerprints.BITS || blocks > Fingerprints.BITS) {
+            throw new IllegalArgumentException("Invalid number of blocks: " + blocks + "!");
+        }
+        this.hashes = hashes;
+        this.offsets = new int[blocks];
+        this.widths = new int[blocks];
+        this.tables = new IntListMultimap[blocks];
+        this.seen = new int[hashes.size()];
+        for (int b = 0, offset = 0; b < blocks; b++) {
+            // Spread the remainder bits over the first blocks.
+            widths[b] = Fingerprints.BITS / blocks + (b < Fingerprints.BITS % blocks ? 1 : 0);
+            offsets[b] = offset;
+            offset += widths[b];
+            tables[b] = new IntListMultimap(hashes.size());
+        }
+        for (int id = 0; id < hashes.size(); id++) {
+            for (int b = 0; b < blocks; b++) {
+                tables[b].put(blockKey(hashes.lo(id), hashes.hi(id), b), id);
+            }
+        }
+    }
+
+    // Blocks of about log2(n) bits keep the expected bucket size near one.
+    private static int defaultBlocks(int n) {
+        int width = Math.max(8, Math.min(Integer.SIZE, 32 - Integer.numberOfLeadingZeros(Math.max(n, 1))));
+        return (Fingerprints.BITS + width - 1) / width;
+    }
+
+    // Counts fingerprints other than id within Hamming distance k of fingerprint id.
+    // Not thread-safe, the candidate stamps are shared between queries.
+    public int countWithin(int id, int k) {
+        int radius = k / tables.length;
+        if (probes(radius) >= hashes.size()) {
+            return hashes.countWithin(id, k);
+        }
+        if (++stamp == 0) {
+            Arrays.fill(seen, 0);
+            stamp = 1;
+        }
+        long lo = hashes.lo(id);
+        long hi = hashes.hi(id);
+        int counter = 0;
+        for (int b = 0; b < tables.length; b++) {
+            counter += probe(b, blockKey(lo, hi, b), 0, radius, id, lo, hi, k);
+        }
+        return counter;
+    }
+
+    // Visits every key within radius of key by flipping bits at positions >= from.
+    private int probe(int b, int key, int from, int radius, int id, long lo, long hi, int k) {
+        int counter = 0;
+        IntListMultimap table = tables[b];
+        int slot = table.indexOf(key);
+        if (slot >= 0) {
+            int[] ids = table.valuesAt(slot);
+            for (int i = 0, n = table.lengthAt(slot); i < n; i++) {
+                int candidateId = ids[i];
+                if (candidateId == id || seen[candidateId] == stamp) continue;
+                seen[candidateId] = stamp;
+                if (Fingerprints.hammingDistance(lo, hi, hashes.lo(candidateId), hashes.hi(candidateId)) <= k) {
+                    counter++;
+                }
+            }
+        }
+        if (radius > 0) {
+            for (int bit = from; bit < widths[b]; bit++) {
+                counter += probe(b, key ^ (1 << bit), bit + 1, radius - 1, id, lo, hi, k);
+            }
+        }
+        return counter;
+    }
+
+    // Total number of keys probed over all blocks for the given radius.
+    private long probes(int radius) {
+        long total = 0;
+        for (int width : widths) {
+            long binomial = 1;
+            for (int d = 0; d <= radius && d <= width; d++) {
+                if (d > 0) binomial = binomial * (width - d + 1) / d;
+                total += binomial;
+            }
+        }
+        return total;
+    }
+
+    private int blockKey(long lo, long hi, int b) {
+        long mask = (1L << widths[b]) - 1;
+        return (int) (BandKeys.bits(lo, hi, offsets[b]) & mask);
+    }
+
+}
@@ -0,0 +1,118 @@
+import java.util.Arrays;
+
+// Incremental near-duplicate detection over LSH band buckets.
+// Each arriving document is first counted against the documents already indexed
+// and then inserted, in the same step; documents can later be removed when they expire.
+// Ids are assigned in insertion order, starting from 0.
+//
+// A windowed index keeps only the last capacity documents: document id lives in slot id % capacity
+// of the fingerprint store and the band buckets, and inserting it evicts the document capacity ids older,
+// so memory stays bounded by the window however long the stream runs.
+// Without a capacity every document keeps its own slot.
+public final class OnlineSimHashIndex {
+
+    private final Fingerprints hashes;
+    private final BandIndex buckets;
+    // Number of slots of a windowed index, 0 when unbounded.
+    private final int capacity;
+    private boolean[] live;
+    private int liveCount;
+    private int size;
+    // Oldest id that may still be live, used by expireBefore.
+    private int oldest;
+    private int[] seen;
+    private int stamp;
+
+    public OnlineSimHashIndex(BandKeys bandKeys, int expectedDocs) {
+        this(bandKeys, expectedDocs, 0);
+    }
+
+    private OnlineSimHashIndex(BandKeys bandKeys, int expectedDocs, int capacity) {
+        this.hashes = capacity > 0 ? Fingerprints.ofSize(capacity) : new Fingerprints(expectedDocs);
+        this.buckets = new BandIndex(bandKeys, expectedDocs);
+        this.capacity = capacity;
+        this.live = new boolean[Math.max(expectedDocs, 1)];
+        this.seen = new int[live.length];
+    }
+
+    // Index of the last window documents; older ones are evicted as new ones arrive.
+    public static OnlineSimHashIndex windowed(BandKeys bandKeys, int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must be positive, got " + window + "!");
+        }
+        return new OnlineSimHashIndex(bandKeys, window, window);
+    }
+
+    // Number of documents inserted so far, including removed ones.
+    public int size() {
+        return size;
+    }
+
+    public int liveCount() {
+        return liveCount;
+    }
+
+    // Counts indexed documents within Hamming distance k of (lo, hi), then inserts it.
+    // The new document's id is size() - 1 afterwards.
+    public int insertAndCount(long lo, long hi, int k) {
+        int counter = countWithin(lo, hi, k);
+        insert(lo, hi);
+        return counter;
+    }
+
+    public int countWithin(long lo, long hi, int k) {
+        if (++stamp == 0) {
+            Arrays.fill(seen, 0);
+            stamp = 1;
+        }
+        // Buckets hold slots, which index the fingerprint store and seen alike.
+        return buckets.countWithin(hashes, -1, lo, hi, k, seen, stamp);
+    }
+
+    public int insert(long lo, long hi) {
+        int id = size;
+        if (capacity > 0) {
+            // The slot still holds the document capacity ids older, unless it has already expired.
+            remove(id - capacity);
+            hashes.set(slot(id), lo, hi);
+        } else {
+            hashes.add(lo, hi);
+            if (id == live.length) {
+                live = Arrays.copyOf(live, live.length * 2);
+                seen = Arrays.copyOf(seen, live.length);
+            }
+        }
+        size++;
+        int slot = slot(id);
+        live[slot] = true;
+        liveCount++;
+        buckets.add(slot, lo, hi);
+        return id;
+    }
+
+    public boolean remove(int id) {
+        if (id < 0 || id >= size || (capacity > 0 && id < size - capacity)) return false;
+        int slot = slot(id);
+        if (!live[slot]) return false;
+        live[slot] = false;
+        liveCount--;
+        buckets.remove(slot, hashes.lo(slot), hashes.hi(slot));
+        return true;
+    }
+
+    // Removes every document inserted before id, e.g. to keep a sliding window of recent documents.
+    public void expireBefore(int id) {
+        if (capacity > 0) {
+            // Documents older than the window have already been evicted.
+            oldest = Math.max(oldest, size - capacity);
+        }
+        for (int end = Math.min(id, size); oldest < end; oldest++) {
+            remove(oldest);
+        }
+    }
+
+    private int slot(int id) {
+        return capacity > 0 ? id % capacity : id;
+    }
+
+}
@@ -1,6 +1,3 @@
-import org.apache.commons.codec.binary.BinaryCodec;
-import org.apache.commons.codec.digest.DigestUtils;
-
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -8,17 +5,23 @@ import java.util.*;
 
 public class SimHash {
 
-    private static final DigestUtils DIGEST_UTILS = new DigestUtils("MD5");
-    private static final int HASH_BIN_LENGTH = DIGEST_UTILS.getMessageDigest().getDigestLength() * 8;
-
+    // Usage: SimHash [--threads T] [--cache-size C] [--hasher md5|murmur3]
+    // T <= 0 uses every available core, C bounds the term hashes cached per thread (C <= 0 disables caching).
     public static void main(String[] args) {
         long start = System.nanoTime();
+        Options options = Options.parse(args);
+        SimHashFingerprinter fingerprinter = new SimHashFingerprinter(
+                options.getInt("threads", 1),
+                options.getInt("cache-size", SimHashFingerprinter.DEFAULT_CACHE_SIZE),
+                TermHasher.factory(options.get("hasher", TermHasher.MD5))
+        );
         // Linked list: texts -> queries
         List<String[]> inputs = readInput();
         // inputs.remove(0) removes and returns texts and so on...
-        int[][] hashes = prepareHashes(inputs.remove(0));
+        Fingerprints hashes = fingerprinter.fingerprint(inputs.remove(0));
         Arrays.stream(processQueries(inputs.remove(0), hashes))
                 .forEach(System.out::println);
+        System.err.println(fingerprinter.cacheStats());
         System.err.println((System.nanoTime() - start) * 1e-9);
     }
 
@@ -45,74 +48,18 @@ public class SimHash {
         return inputs;
     }
 
-    private static int[][] prepareHashes(String[] texts) {
-        int[][] hashes = new int[texts.length][];
-        Map<String, char[]> hashBinCache = new HashMap<>();
-        for (int i = 0; i < hashes.length; i++) {
-            hashes[i] = simHash(texts[i], hashBinCache);
-        }
-        return hashes;
-    }
-
-    private static int[] simHash(String text, Map<String, char[]> hashBinCache) {
-        int[] sh = new int[HASH_BIN_LENGTH];
-        String[] terms = text.split("\\s+");
-        for (String term : terms) {
-            char[] hashBinChars = hashBinCache.computeIfAbsent(
-                    term, k -> BinaryCodec.toAsciiString(DIGEST_UTILS.digest(term)).toCharArray()
-            );
-            for (int i = 0; i < hashBinChars.length; i++) {
-                if (hashBinChars[i] == '1') {
-                    sh[i] += 1;
-                } else {
-                    sh[i] -= 1;
-                }
-            }
-        }
-        for (int i = 0; i < sh.length; i++) {
-            sh[i] = sh[i] >= 0 ? 1 : 0;
-        }
-        return sh;
-    }
-
-    private static int[] processQueries(String[] queries, int[][] hashes) {
+    private static int[] processQueries(String[] queries, Fingerprints hashes) {
         int[] results = new int[queries.length];
-        Map<String, Integer> distancesCache = new HashMap<>();
+        // Recomputing a popcount is cheaper than memoising distances per pair.
+        MultiIndexHamming index = new MultiIndexHamming(hashes);
         for (int i = 0; i < queries.length; i++) {
             String query = queries[i];
             String[] parts = query.split("\\s+");
             int I = Integer.parseInt(parts[0]);
             int K = Integer.parseInt(parts[1]);
-            int counter = 0;
-            for (int j = 0; j < hashes.length; j++) {
-                if (j == I) {
-                    continue;
-                }
-                String key = "" + Math.min(I, j) + "," + Math.max(I, j);
-                int finalJ = j;
-                Integer distance = distancesCache.computeIfAbsent(
-                        key, k -> hammingDistance(hashes[I], hashes[finalJ])
-                );
-                if (distance <= K) {
-                    counter++;
-                }
-            }
-            results[i] = counter;
+            results[i] = index.countWithin(I, K);
         }
         return results;
     }
 
-    private static int hammingDistance(int[] h1, int[] h2) {
-        int counter = 0;
-        if (h1.length != h2.length) {
-            throw new RuntimeException("Binaries have different length!");
-        }
-        for (int i = 0; i < h1.length; i++) {
-            if (h1[i] != h2[i]) {
-                counter++;
-            }
-        }
-        return counter;
-    }
-
 }
@@ -1,186 +1,140 @@
-import org.apache.commons.codec.binary.BinaryCodec;
-import org.apache.commons.codec.digest.DigestUtils;
-
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class SimHashBuckets {
 
-    private static final DigestUtils DIGEST_UTILS = new DigestUtils("MD5");
-    private static final int HASH_BIN_LENGTH = DIGEST_UTILS.getMessageDigest().getDigestLength() * 8;
-    private static final int B = 8;
-    private static final int R = HASH_BIN_LENGTH / B;
+    private static final int HASH_BIN_LENGTH = Fingerprints.BITS;
+    private static final int DEFAULT_B = 8;
 
-    public static void main(String[] args) {
+    // Usage:
+    //   SimHashBuckets [B [R]]              texts and queries from stdin
+    //   SimHashBuckets index <file> [B [R]] texts from stdin, written to an index file
+    //   SimHashBuckets append <file>        texts from stdin, appended to an index file
+    //   SimHashBuckets query <file>         queries from stdin, answered from an index file
+    //   SimHashBuckets compact <file>       rewrites an index file into as few segments as possible
+    //   SimHashBuckets stream <K> [B [R]]   texts from stdin; for each text prints how many earlier texts
+    //                                       are within distance K, optionally only the last --window W ones
+    // Band keys are ints, so R <= 32, and B * R must not exceed the fingerprint length;
+    // R defaults to min(128 / B, 32), for B < 4 leaving the remaining fingerprint bits unused.
+    // Every command accepts --threads T, --cache-size C and --hasher md5|murmur3 for fingerprinting,
+    // where T <= 0 uses every available core and C bounds the term hashes cached per thread
+    // (C <= 0 disables caching). Index files record their hasher and reject any other.
+    // Every append adds a segment that each query probes, so compact an index after many small appends.
+    public static void main(String[] args) throws IOException {
         long start = System.nanoTime();
-        // Linked list: texts -> queries
-        List<String[]> inputs = readInput();
-        // inputs.remove(0) removes and returns texts and so on...
-        int[][] hashes = prepareHashes(inputs.remove(0));
-        Arrays.stream(processQueries(inputs.remove(0), hashes, lsh(hashes)))
-                .forEach(System.out::println);
+        Options options = Options.parse(args);
+        String command = options.positionalCount() > 0 && !Character.isDigit(options.positional(0).charAt(0))
+                ? options.positional(0) : null;
+        int offset = command == null ? 0 : 2;
+        int B = options.positionalCount() > offset ? Integer.parseInt(options.positional(offset)) : DEFAULT_B;
+        int R = options.positionalCount() > offset + 1
+                ? Integer.parseInt(options.positional(offset + 1)) : Math.min(HASH_BIN_LENGTH / B, BandKeys.MAX_ROWS);
+        BandKeys bandKeys = new BandKeys(B, R);
+        String hasher = options.get("hasher", TermHasher.MD5);
+        SimHashFingerprinter fingerprinter = new SimHashFingerprinter(
+                options.getInt("threads", 1),
+                options.getInt("cache-size", SimHashFingerprinter.DEFAULT_CACHE_SIZE),
+                TermHasher.factory(hasher)
+        );
+        if (command == null) {
+            // Linked list: texts -> queries
+            List<String[]> inputs = readInput();
+            // inputs.remove(0) removes and returns texts and so on...
+            Fingerprints hashes = fingerprinter.fingerprint(inputs.remove(0));
+            Arrays.stream(processQueries(inputs.remove(0), hashes, lsh(hashes, bandKeys)))
+                    .forEach(System.out::println);
+        } else {
+            switch (command) {
+                case "index" -> SimHashIndexFile.write(
+                        Path.of(options.positional(1)), fingerprinter.fingerprint(readInput(1).get(0)), bandKeys, hasher
+                );
+                case "append" -> SimHashIndexFile.append(
+                        Path.of(options.positional(1)), fingerprinter.fingerprint(readInput(1).get(0)), hasher
+                );
+                case "query" -> {
+                    try (SimHashIndexFile index = SimHashIndexFile.open(Path.of(options.positional(1)), hasher)) {
+                        Arrays.stream(processQueries(readInput(1).get(0), index))
+                                .forEach(System.out::println);
+                    }
+                }
+                case "compact" -> SimHashIndexFile.compact(Path.of(options.positional(1)), hasher);
+                case "stream" -> Arrays.stream(processStream(
+                        fingerprinter.fingerprint(readInput(1).get(0)), bandKeys,
+                        Integer.parseInt(options.positional(1)), options.getInt("window", 0)
+                )).forEach(System.out::println);
+                default -> throw new IllegalArgumentException("Unknown command: " + command);
+            }
+        }
+        System.err.println(fingerprinter.cacheStats());
         System.err.println((System.nanoTime() - start) * 1e-9);
     }
 
     private static List<String[]> readInput() {
+        return readInput(2);
+    }
+
+    // Reads the given number of blocks, each being a line count followed by that many lines.
+    private static List<String[]> readInput(int blocks) {
         List<String[]> inputs = new LinkedList<>();
-        String[] texts = null;
-        String[] queries = null;
         try (BufferedReader br = new BufferedReader(new InputStreamReader(System.in))) {
-            int N = Integer.parseInt(br.readLine().strip());
-            texts = new String[N];
-            for (int i = 0; i < N; i++) {
-                texts[i] = br.readLine().strip();
-            }
-            int Q = Integer.parseInt(br.readLine().strip());
-            queries = new String[Q];
-            for (int i = 0; i < Q; i++) {
-                queries[i] = br.readLine().strip();
+            for (int b = 0; b < blocks; b++) {
+                int N = Integer.parseInt(br.readLine().strip());
+                String[] lines = new String[N];
+                for (int i = 0; i < N; i++) {
+                    lines[i] = br.readLine().strip();
+                }
+                inputs.add(lines);
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
-        inputs.add(texts);
-        inputs.add(queries);
         return inputs;
     }
 
-    private static int[][] prepareHashes(String[] texts) {
-        int[][] hashes = new int[texts.length][];
-        Map<String, char[]> hashBinCache = new HashMap<>();
-        for (int i = 0; i < hashes.length; i++) {
-            hashes[i] = simHash(texts[i], hashBinCache);
-        }
-        return hashes;
-    }
-
-    private static int[] simHash(String text, Map<String, char[]> hashBinCache) {
-        int[] sh = new int[HASH_BIN_LENGTH];
-        String[] terms = text.split("\\s+");
-        for (String term : terms) {
-            char[] hashBinChars = hashBinCache.computeIfAbsent(
-                    term, k -> BinaryCodec.toAsciiString(DIGEST_UTILS.digest(term)).toCharArray()
-            );
-            for (int i = 0; i < hashBinChars.length; i++) {
-                if (hashBinChars[i] == '1') {
-                    sh[i] += 1;
-                } else {
-                    sh[i] -= 1;
-                }
-            }
-        }
-        for (int i = 0; i < sh.length; i++) {
-            sh[i] = sh[i] >= 0 ? 1 : 0;
-        }
-        return sh;
+    private static BandIndex lsh(Fingerprints hashes, BandKeys bandKeys) {
+        // Every band key is sliced straight out of the fingerprint words.
+        return BandIndex.build(hashes, bandKeys);
     }
 
-    private static Map<Integer, Set<Integer>> lsh(int[][] hashes) {
-        Map<Integer, Set<Integer>> candidates = new HashMap<>();
-        String[] hashesAsStrings = hashesToStrings(hashes);
-        // for each band
-        for (int band = 1; band <= B; band++) {
-            // buckets for current band
-            Map<Integer, Set<Integer>> buckets = new HashMap<>();
-            // for each text
-            for (int currentTextId = 0; currentTextId < hashes.length; currentTextId++) {
-                // calculate band value
-                int bandValue = hashToInt(band, hashesAsStrings[currentTextId]);
-                // fetch text ids from current bucket based on band value
-                Set<Integer> bucketTextIds = buckets.get(bandValue);
-                if (bucketTextIds != null) {
-                    // there are some text ids in current bucket,
-                    // so update candidates map
-                    for (int textId : bucketTextIds) {
-                        candidates.merge(currentTextId, new HashSet<>() {{
-                                    add(textId);
-                                }},
-                                (oldValue, newValue) -> {
-                                    oldValue.add(textId);
-                                    return oldValue;
-                                });
-                        int finalCurrentTextId = currentTextId;
-                        candidates.merge(textId, new HashSet<>() {{
-                                    add(finalCurrentTextId);
-                                }},
-                                (oldValue,
-                                 newValue) -> {
-                                    oldValue.add(finalCurrentTextId);
-                                    return oldValue;
-                                });
-                    }
-                } else {
-                    // there are no text ids in current bucket,
-                    // so create a new bucket of text ids
-                    bucketTextIds = new HashSet<>();
-                }
-                // add current text id to current bucket of text ids
-                bucketTextIds.add(currentTextId);
-                // update buckets
-                buckets.put(bandValue, bucketTextIds);
-            }
-        }
-        return candidates;
-    }
-
-    private static String[] hashesToStrings(int[][] hashes) {
-        String[] hashesAsStrings = new String[hashes.length];
-        for (int i = 0; i < hashesAsStrings.length; i++) {
-            hashesAsStrings[i] = Arrays.stream(hashes[i])
-                    .mapToObj(String::valueOf)
-                    .collect(Collectors.joining());
-        }
-        return hashesAsStrings;
-    }
-
-    private static int hashToInt(int band, String hashString) {
-        // band = 1 -> return 0:(R-1) bits
-        // band = 2 -> return R:2R-1 bits...
-        int startIndex = hashString.length() - R * band;
-        int endIndex = startIndex + R;
-        return Integer.valueOf(hashString.substring(startIndex, endIndex), 2);
-    }
-
-    private static int[] processQueries(String[] queries, int[][] hashes, Map<Integer, Set<Integer>> candidates) {
+    private static int[] processQueries(String[] queries, Fingerprints hashes, BandIndex buckets) {
         int[] results = new int[queries.length];
-        Map<String, Integer> distancesCache = new HashMap<>();
+        // Stamp per candidate, so each candidate is compared once per query
+        // even when it shares several bands with the queried text.
+        int[] seen = new int[hashes.size()];
         for (int i = 0; i < queries.length; i++) {
             String query = queries[i];
             String[] parts = query.split("\\s+");
             int I = Integer.parseInt(parts[0]);
             int K = Integer.parseInt(parts[1]);
-            int counter = 0;
-            Set<Integer> candidateIds = candidates.get(I);
-            if (candidateIds != null) {
-                for (int candidateId : candidateIds) {
-                    String key = "" + Math.min(I, candidateId) + "," + Math.max(I, candidateId);
-                    Integer distance = distancesCache.computeIfAbsent(
-                            key, k -> hammingDistance(hashes[I], hashes[candidateId])
-                    );
-                    if (distance <= K) {
-                        counter++;
-                    }
-                }
-            }
-            results[i] = counter;
+            results[i] = buckets.countWithin(hashes, I, hashes.lo(I), hashes.hi(I), K, seen, i + 1);
         }
         return results;
     }
 
-    private static int hammingDistance(int[] h1, int[] h2) {
-        int counter = 0;
-        if (h1.length != h2.length) {
-            throw new RuntimeException("Binaries have different length!");
+    private static int[] processStream(Fingerprints hashes, BandKeys bandKeys, int K, int window) {
+        int[] results = new int[hashes.size()];
+        // A windowed index evicts text i - window when text i is inserted.
+        OnlineSimHashIndex index = window > 0
+                ? OnlineSimHashIndex.windowed(bandKeys, window) : new OnlineSimHashIndex(bandKeys, hashes.size());
+        for (int i = 0; i < results.length; i++) {
+            results[i] = index.insertAndCount(hashes.lo(i), hashes.hi(i), K);
         }
-        for (int i = 0; i < h1.length; i++) {
-            if (h1[i] != h2[i]) {
-                counter++;
-            }
+        return results;
+    }
+
+    private static int[] processQueries(String[] queries, SimHashIndexFile index) {
+        int[] results = new int[queries.length];
+        int[] seen = new int[index.size()];
+        for (int i = 0; i < queries.length; i++) {
+            String[] parts = queries[i].split("\\s+");
+            int I = Integer.parseInt(parts[0]);
+            int K = Integer.parseInt(parts[1]);
+            results[i] = index.countWithin(I, index.lo(I), index.hi(I), K, seen, i + 1);
         }
-        return counter;
+        return results;
     }
 
 }
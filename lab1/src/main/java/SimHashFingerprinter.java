@@ -0,0 +1,145 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Computes SimHash fingerprints of texts, optionally on several threads.
+// Every worker owns its term hasher and term cache (DigestUtils is not thread-safe),
+// and each fingerprint depends only on its own text, so the result is identical
+// to the sequential one regardless of the thread count.
+public final class SimHashFingerprinter {
+
+    // Terms cached per worker by default.
+    public static final int DEFAULT_CACHE_SIZE = 1 << 18;
+    // Texts claimed by a worker at once.
+    private static final int CHUNK = 256;
+
+    private final int threads;
+    private final int cacheSize;
+    private final Supplier<TermHasher> hasherFactory;
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder cacheEvictions = new LongAdder();
+
+    // threads <= 0 uses every available core.
+    public SimHashFingerprinter(int threads) {
+        this(threads, DEFAULT_CACHE_SIZE);
+    }
+
+    // cacheSize bounds the number of term hashes cached by each worker, <= 0 disables the cache.
+    public SimHashFingerprinter(int threads, int cacheSize) {
+        this(threads, cacheSize, TermHasher.factory(TermHasher.MD5));
+    }
+
+    public SimHashFingerprinter(int threads, int cacheSize, Supplier<TermHasher> hasherFactory) {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.cacheSize = cacheSize;
+        this.hasherFactory = hasherFactory;
+    }
+
+    // Term cache counters summed over all workers of all finished runs.
+    public long cacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long cacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    public long cacheEvictions() {
+        return cacheEvictions.sum();
+    }
+
+    public String cacheStats() {
+        long hits = cacheHits();
+        long lookups = hits + cacheMisses();
+        return String.format(Locale.US, "Term cache: hits=%d, misses=%d, evictions=%d, hit rate=%.2f%%",
+                hits, cacheMisses(), cacheEvictions(), lookups == 0 ? 0.0 : 100.0 * hits / lookups);
+    }
+
+    public Fingerprints fingerprint(String[] texts) {
+        Fingerprints hashes = Fingerprints.ofSize(texts.length);
+        if (threads == 1 || texts.length <= CHUNK) {
+            Worker worker = new Worker();
+            worker.fingerprint(texts, 0, texts.length, hashes);
+            worker.publishStats();
+            return hashes;
+        }
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>(threads);
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(() -> {
+                    Worker worker = new Worker();
+                    int from;
+                    while ((from = next.getAndAdd(CHUNK)) < texts.length) {
+                        worker.fingerprint(texts, from, Math.min(texts.length, from + CHUNK), hashes);
+                    }
+                    worker.publishStats();
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Fingerprinting was interrupted!", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Fingerprinting failed!", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return hashes;
+    }
+
+    private final class Worker {
+
+        private final TermHasher hasher = hasherFactory.get();
+        private final TermHashCache cache = new TermHashCache(cacheSize);
+        // Reused accumulator, so no per-document arrays are allocated.
+        private final int[] sh = new int[Fingerprints.BITS];
+
+        private void fingerprint(String[] texts, int from, int to, Fingerprints hashes) {
+            for (int i = from; i < to; i++) {
+                simHash(texts[i]);
+                hashes.setFromSums(i, sh);
+            }
+        }
+
+        private void simHash(String text) {
+            Arrays.fill(sh, 0);
+            String[] terms = text.split("\\s+");
+            for (String term : terms) {
+                long[] hash = cache.get(term);
+                if (hash == null) {
+                    hash = hasher.hash(term);
+                    cache.put(term, hash);
+                }
+                accumulate(hash[0], 0);
+                accumulate(hash[1], Long.SIZE);
+            }
+        }
+
+        private void accumulate(long word, int offset) {
+            for (int i = 0; i < Long.SIZE; i++) {
+                sh[offset + i] += (int) ((word >>> i) & 1) * 2 - 1;
+            }
+        }
+
+        private void publishStats() {
+            cacheHits.add(cache.hits());
+            cacheMisses.add(cache.misses());
+            cacheEvictions.add(cache.evictions());
+        }
+
+    }
+
+}
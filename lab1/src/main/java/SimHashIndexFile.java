@@ -0,0 +1,308 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+// Persistent SimHash LSH index.
+//
+// Layout (little endian):
+//   header:  magic, version, term hasher id, B, R, number of documents, number of segments (7 ints)
+//   segment: first document id, number of documents c (2 ints),
+//            c fingerprints (lo, hi longs),
+//            for every band c (band key, document id) int pairs sorted by key and id.
+//
+// The index is written once and reopened with one MappedByteBuffer per segment,
+// so queries run without hashing the texts or rebuilding the buckets again.
+// Appending writes new segments behind the existing ones and then updates the header,
+// so existing data is never rewritten and a torn append is ignored on open.
+// Fingerprints of different term hashers are not comparable, so the index records the hasher
+// that built it and append and open reject any other.
+//
+// A query probes every segment, so its cost grows with the number of appends; after many small
+// appends, compact rewrites the index into as few segments as possible (into a temporary file
+// that then replaces the index, so an interrupted compaction leaves the old index intact).
+public final class SimHashIndexFile implements AutoCloseable {
+
+    private static final int MAGIC = 0x53484958; // "SHIX"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 7 * Integer.BYTES;
+    private static final int SEGMENT_HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int FINGERPRINT_BYTES = Fingerprints.WORDS * Long.BYTES;
+    private static final int POSTING_BYTES = 2 * Integer.BYTES;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+    // Term hasher ids are positions in this list, so new hashers may only be added at its end.
+    private static final List<String> HASHERS = List.of(TermHasher.MD5, TermHasher.MURMUR3);
+
+    private final FileChannel channel;
+    private final BandKeys bandKeys;
+    private final int size;
+    private final int[] docBases;
+    private final MappedByteBuffer[] segments;
+
+    private SimHashIndexFile(FileChannel channel, BandKeys bandKeys, int size,
+                             int[] docBases, MappedByteBuffer[] segments) {
+        this.channel = channel;
+        this.bandKeys = bandKeys;
+        this.size = size;
+        this.docBases = docBases;
+        this.segments = segments;
+    }
+
+    // hasher names the term hasher that built the fingerprints, see TermHasher.factory.
+    public static void write(Path path, Fingerprints hashes, BandKeys bandKeys, String hasher) throws IOException {
+        int hasherId = hasherId(hasher);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(channel, hasherId, bandKeys, 0, 0);
+            int segmentsCount = writeSegments(channel, HEADER_BYTES, hashes, 0, bandKeys);
+            channel.force(false);
+            writeHeader(channel, hasherId, bandKeys, hashes.size(), segmentsCount);
+        }
+    }
+
+    public static void append(Path path, Fingerprints hashes, String hasher) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = readHeader(channel, hasher);
+            BandKeys bandKeys = new BandKeys(header.getInt(12), header.getInt(16));
+            int size = header.getInt(20);
+            int segmentsCount = header.getInt(24);
+            // Drop anything left behind by an interrupted append.
+            long end = HEADER_BYTES;
+            for (int i = 0; i < segmentsCount; i++) {
+                end += segmentBytes(readSegmentCount(channel, end), bandKeys.bands());
+            }
+            channel.truncate(end);
+            segmentsCount += writeSegments(channel, end, hashes, size, bandKeys);
+            channel.force(false);
+            writeHeader(channel, header.getInt(8), bandKeys, size + hashes.size(), segmentsCount);
+        }
+    }
+
+    // Rewrites the index into as few segments as possible.
+    public static void compact(Path path, String hasher) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (SimHashIndexFile index = open(path, hasher)) {
+            Fingerprints hashes = new Fingerprints(index.size());
+            for (int id = 0; id < index.size(); id++) {
+                hashes.add(index.lo(id), index.hi(id));
+            }
+            write(temporary, hashes, index.bandKeys(), hasher);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static SimHashIndexFile open(Path path, String hasher) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = readHeader(channel, hasher);
+            BandKeys bandKeys = new BandKeys(header.getInt(12), header.getInt(16));
+            int size = header.getInt(20);
+            int segmentsCount = header.getInt(24);
+            int[] docBases = new int[segmentsCount];
+            MappedByteBuffer[] segments = new MappedByteBuffer[segmentsCount];
+            long position = HEADER_BYTES;
+            for (int i = 0; i < segmentsCount; i++) {
+                long bytes = segmentBytes(readSegmentCount(channel, position), bandKeys.bands());
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, bytes);
+                segments[i].order(ByteOrder.LITTLE_ENDIAN);
+                docBases[i] = segments[i].getInt(0);
+                position += bytes;
+            }
+            return new SimHashIndexFile(channel, bandKeys, size, docBases, segments);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public BandKeys bandKeys() {
+        return bandKeys;
+    }
+
+    public long lo(int id) {
+        int s = segmentOf(id);
+        return segments[s].getLong(fingerprintOffset(id - docBases[s]));
+    }
+
+    public long hi(int id) {
+        int s = segmentOf(id);
+        return segments[s].getLong(fingerprintOffset(id - docBases[s]) + Long.BYTES);
+    }
+
+    // Same contract as BandIndex.countWithin, answered straight from the mapped file.
+    public int countWithin(int id, long lo, long hi, int k, int[] seen, int stamp) {
+        int counter = 0;
+        for (int band = 0; band < bandKeys.bands(); band++) {
+            int key = bandKeys.key(lo, hi, band);
+            for (MappedByteBuffer segment : segments) {
+                int count = segment.getInt(Integer.BYTES);
+                int postings = postingsOffset(count, band);
+                for (int p = lowerBound(segment, postings, count, key); p < count; p++) {
+                    int offset = postings + p * POSTING_BYTES;
+                    if (segment.getInt(offset) != key) break;
+                    int candidateId = segment.getInt(offset + Integer.BYTES);
+                    if (candidateId == id || seen[candidateId] == stamp) continue;
+                    seen[candidateId] = stamp;
+                    int f = fingerprintOffset(candidateId - segment.getInt(0));
+                    if (Fingerprints.hammingDistance(lo, hi, segment.getLong(f),
+                            segment.getLong(f + Long.BYTES)) <= k) {
+                        counter++;
+                    }
+                }
+            }
+        }
+        return counter;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int segmentOf(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Document " + id + " is not in the index!");
+        }
+        int s = Arrays.binarySearch(docBases, id);
+        return s >= 0 ? s : -s - 2;
+    }
+
+    // First posting with key >= target, comparing keys as signed ints (the sort order used on write).
+    private static int lowerBound(ByteBuffer segment, int postings, int count, int key) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (segment.getInt(postings + mid * POSTING_BYTES) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int fingerprintOffset(int localId) {
+        return SEGMENT_HEADER_BYTES + localId * FINGERPRINT_BYTES;
+    }
+
+    private static int postingsOffset(int count, int band) {
+        return SEGMENT_HEADER_BYTES + count * FINGERPRINT_BYTES + band * count * POSTING_BYTES;
+    }
+
+    private static long segmentBytes(int count, int bands) {
+        return SEGMENT_HEADER_BYTES + (long) count * (FINGERPRINT_BYTES + (long) bands * POSTING_BYTES);
+    }
+
+    // Largest segment that a single MappedByteBuffer can address.
+    private static int maxSegmentDocs(int bands) {
+        return (int) ((Integer.MAX_VALUE - SEGMENT_HEADER_BYTES) / (FINGERPRINT_BYTES + (long) bands * POSTING_BYTES));
+    }
+
+    private static int writeSegments(FileChannel channel, long position, Fingerprints hashes,
+                                     int docBase, BandKeys bandKeys) throws IOException {
+        int maxDocs = maxSegmentDocs(bandKeys.bands());
+        int segmentsCount = 0;
+        for (int from = 0; from < hashes.size(); from += maxDocs) {
+            int to = Math.min(hashes.size(), from + maxDocs);
+            position = writeSegment(channel, position, hashes, from, to, docBase, bandKeys);
+            segmentsCount++;
+        }
+        return segmentsCount;
+    }
+
+    private static long writeSegment(FileChannel channel, long position, Fingerprints hashes,
+                                     int from, int to, int docBase, BandKeys bandKeys) throws IOException {
+        int count = to - from;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(docBase + from).putInt(count);
+        for (int id = from; id < to; id++) {
+            position = flushIfFull(channel, position, buffer, FINGERPRINT_BYTES);
+            buffer.putLong(hashes.lo(id)).putLong(hashes.hi(id));
+        }
+        long[] postings = new long[count];
+        for (int band = 0; band < bandKeys.bands(); band++) {
+            for (int id = from; id < to; id++) {
+                long key = bandKeys.key(hashes, id, band);
+                postings[id - from] = (key << Integer.SIZE) | (docBase + id);
+            }
+            Arrays.sort(postings);
+            for (long posting : postings) {
+                position = flushIfFull(channel, position, buffer, POSTING_BYTES);
+                buffer.putInt((int) (posting >> Integer.SIZE)).putInt((int) posting);
+            }
+        }
+        return flush(channel, position, buffer);
+    }
+
+    private static long flushIfFull(FileChannel channel, long position, ByteBuffer buffer, int needed)
+            throws IOException {
+        return buffer.remaining() >= needed ? position : flush(channel, position, buffer);
+    }
+
+    private static long flush(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        buffer.clear();
+        return position;
+    }
+
+    private static int hasherId(String hasher) {
+        int id = HASHERS.indexOf(hasher);
+        if (id < 0) {
+            throw new IllegalArgumentException("Unknown term hasher: " + hasher);
+        }
+        return id;
+    }
+
+    private static void writeHeader(FileChannel channel, int hasherId, BandKeys bandKeys, int size,
+                                    int segmentsCount) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(hasherId).putInt(bandKeys.bands()).putInt(bandKeys.rows())
+                .putInt(size).putInt(segmentsCount).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    private static ByteBuffer readHeader(FileChannel channel, String hasher) throws IOException {
+        ByteBuffer header = readFully(channel, 0, HEADER_BYTES);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("Not a SimHash index file (version " + VERSION + ")!");
+        }
+        int hasherId = header.getInt(8);
+        if (hasherId != hasherId(hasher)) {
+            String built = hasherId >= 0 && hasherId < HASHERS.size() ? HASHERS.get(hasherId) : "unknown";
+            throw new IOException("Index was built with the " + built + " term hasher, not " + hasher + "!");
+        }
+        return header;
+    }
+
+    private static int readSegmentCount(FileChannel channel, long position) throws IOException {
+        return readFully(channel, position, SEGMENT_HEADER_BYTES).getInt(Integer.BYTES);
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of SimHash index file!");
+            }
+        }
+        return buffer.flip();
+    }
+
+}
@@ -0,0 +1,62 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Size-bounded LRU cache of 128-bit term hashes, kept as (lo, hi) longs.
+// Not thread-safe: every fingerprinting worker owns one.
+public final class TermHashCache {
+
+    private final int maxSize;
+    private final LinkedHashMap<String, long[]> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    // maxSize <= 0 disables caching.
+    public TermHashCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+                if (size() > TermHashCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // Cached hash of term, or null on a miss.
+    public long[] get(String term) {
+        long[] hash = maxSize > 0 ? entries.get(term) : null;
+        if (hash != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return hash;
+    }
+
+    public void put(String term, long[] hash) {
+        if (maxSize > 0) {
+            entries.put(term, hash);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    public long evictions() {
+        return evictions;
+    }
+
+}
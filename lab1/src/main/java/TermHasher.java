@@ -0,0 +1,51 @@
+import org.apache.commons.codec.binary.StringUtils;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.codec.digest.MurmurHash3;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.Supplier;
+
+// 128-bit hash of a term as (lo, hi) longs; bit i of the hash is bit (i % 64) of word i / 64.
+// Implementations need not be thread-safe, every fingerprinting worker gets its own instance.
+public interface TermHasher {
+
+    String MD5 = "md5";
+    String MURMUR3 = "murmur3";
+
+    long[] hash(String term);
+
+    // Factory of hashers by name: "md5" (default, reproduces the original fingerprints)
+    // or "murmur3" (MurmurHash3 x64 128-bit, much cheaper but gives different fingerprints).
+    static Supplier<TermHasher> factory(String name) {
+        return switch (name) {
+            case MD5 -> Md5::new;
+            case MURMUR3 -> Murmur3::new;
+            default -> throw new IllegalArgumentException("Unknown term hasher: " + name);
+        };
+    }
+
+    // MD5 digest read as a little-endian 128-bit number: bit i is bit (i % 8) of byte (i / 8).
+    final class Md5 implements TermHasher {
+
+        private final DigestUtils digestUtils = new DigestUtils("MD5");
+
+        @Override
+        public long[] hash(String term) {
+            ByteBuffer digest = ByteBuffer.wrap(digestUtils.digest(term)).order(ByteOrder.LITTLE_ENDIAN);
+            return new long[]{digest.getLong(0), digest.getLong(Long.BYTES)};
+        }
+
+    }
+
+    // MurmurHash3 x64 128-bit of the UTF-8 bytes with seed 0, the first word being the low one.
+    final class Murmur3 implements TermHasher {
+
+        @Override
+        public long[] hash(String term) {
+            return MurmurHash3.hash128x64(StringUtils.getBytesUtf8(term));
+        }
+
+    }
+
+}
@@ -0,0 +1,8 @@
+// Receives one basket at a time; only the first length entries of items are valid
+// and the array may be reused for the next basket.
+@FunctionalInterface
+public interface BasketConsumer {
+
+    void accept(int[] items, int length);
+
+}
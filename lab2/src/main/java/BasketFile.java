@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// PCY input file that is re-streamed from disk on every pass instead of being kept in memory.
+// The file has the same layout as the standard input: the number of baskets, s,
+// the number of buckets and then one basket of whitespace separated item ids per line.
+// Baskets are parsed straight from a direct buffer filled by a FileChannel.
+public final class BasketFile implements BasketSource {
+
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final int HEADER_LINES = 3;
+
+    private final Path path;
+    private final int numOfBaskets;
+    private final double support;
+    private final int numOfBuckets;
+    private final long dataOffset;
+
+    private BasketFile(Path path, int numOfBaskets, double support, int numOfBuckets, long dataOffset) {
+        this.path = path;
+        this.numOfBaskets = numOfBaskets;
+        this.support = support;
+        this.numOfBuckets = numOfBuckets;
+        this.dataOffset = dataOffset;
+    }
+
+    public static BasketFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(4096);
+            channel.read(buffer);
+            buffer.flip();
+            String[] header = new String[HEADER_LINES];
+            int start = 0;
+            for (int line = 0; line < HEADER_LINES; line++) {
+                int end = start;
+                while (end < buffer.limit() && buffer.get(end) != '\n') {
+                    end++;
+                }
+                if (end == buffer.limit()) {
+                    throw new IOException("Missing PCY header in " + path + "!");
+                }
+                header[line] = new String(buffer.array(), start, end - start, StandardCharsets.US_ASCII).strip();
+                start = end + 1;
+            }
+            return new BasketFile(path, Integer.parseInt(header[0]), Double.parseDouble(header[1]),
+                    Integer.parseInt(header[2]), start);
+        }
+    }
+
+    @Override
+    public int size() {
+        return numOfBaskets;
+    }
+
+    public double support() {
+        return support;
+    }
+
+    public int numOfBuckets() {
+        return numOfBuckets;
+    }
+
+    @Override
+    public void forEach(BasketConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.position(dataOffset);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+            int[] items = new int[64];
+            int length = 0;
+            int value = 0;
+            boolean negative = false;
+            boolean inNumber = false;
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    if (b >= '0' && b <= '9') {
+                        value = value * 10 + (b - '0');
+                        inNumber = true;
+                    } else if (b == '-' && !inNumber) {
+                        negative = true;
+                    } else {
+                        if (inNumber) {
+                            if (length == items.length) {
+                                items = Arrays.copyOf(items, length * 2);
+                            }
+                            items[length++] = negative ? -value : value;
+                        } else if (negative || (b != ' ' && b != '\t' && b != '\r' && b != '\n')) {
+                            throw new IOException("Unexpected character '" + (char) b + "' in " + path + "!");
+                        }
+                        value = 0;
+                        negative = false;
+                        inNumber = false;
+                        if (b == '\n' && length > 0) {
+                            consumer.accept(items, length);
+                            length = 0;
+                        }
+                    }
+                }
+                buffer.clear();
+            }
+            if (inNumber) {
+                if (length == items.length) {
+                    items = Arrays.copyOf(items, length + 1);
+                }
+                items[length++] = negative ? -value : value;
+            }
+            if (length > 0) {
+                consumer.accept(items, length);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// The PCY input: the number of baskets, s, the number of buckets and the baskets themselves.
+// Without a file the input is read from stdin and kept in memory,
+// with a file every pass re-streams the baskets from disk.
+public final class BasketInput {
+
+    private final BasketSource baskets;
+    private final double threshold;
+    private final int numOfBuckets;
+    private final boolean inMemory;
+
+    private BasketInput(BasketSource baskets, double threshold, int numOfBuckets, boolean inMemory) {
+        this.baskets = baskets;
+        this.threshold = threshold;
+        this.numOfBuckets = numOfBuckets;
+        this.inMemory = inMemory;
+    }
+
+    // Opens the file given as the first positional argument, or reads stdin when there is none.
+    public static BasketInput open(Options options) throws IOException {
+        if (options.positionalCount() > 0) {
+            BasketFile file = BasketFile.open(Path.of(options.positional(0)));
+            return new BasketInput(file, file.support() * file.size(), file.numOfBuckets(), false);
+        }
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(System.in))) {
+            // Read the number of baskets.
+            int numOfBaskets = Integer.parseInt(br.readLine().strip());
+            List<int[]> basketsList = new ArrayList<>(numOfBaskets);
+            // Read s and calculate threshold.
+            double threshold = Double.parseDouble(br.readLine().strip()) * numOfBaskets;
+            // Read the number of buckets.
+            int numOfBuckets = Integer.parseInt(br.readLine().strip());
+            // Read every basket.
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] parts = line.strip().split("\\s+");
+                int[] basket = new int[parts.length];
+                for (int i = 0; i < parts.length; i++) {
+                    basket[i] = Integer.parseInt(parts[i]);
+                }
+                basketsList.add(basket);
+            }
+            return new BasketInput(BasketSource.of(basketsList.toArray(new int[0][])), threshold, numOfBuckets, true);
+        }
+    }
+
+    public BasketSource baskets() {
+        return baskets;
+    }
+
+    // Minimal support count, s times the number of baskets.
+    public double threshold() {
+        return threshold;
+    }
+
+    public int numOfBuckets() {
+        return numOfBuckets;
+    }
+
+    public boolean inMemory() {
+        return inMemory;
+    }
+
+}
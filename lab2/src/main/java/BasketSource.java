@@ -0,0 +1,101 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// A sequence of baskets that can be replayed once per PCY pass.
+public interface BasketSource {
+
+    // Number of baskets, as declared by the input.
+    int size();
+
+    void forEach(BasketConsumer consumer) throws IOException;
+
+    // Bernoulli sample of the baskets; the same seed gives the same sample on every pass.
+    default BasketSource sample(double fraction, long seed) {
+        BasketSource source = this;
+        return new BasketSource() {
+            @Override
+            public int size() {
+                return (int) Math.round(source.size() * fraction);
+            }
+
+            @Override
+            public void forEach(BasketConsumer consumer) throws IOException {
+                Random random = new Random(seed);
+                source.forEach((items, length) -> {
+                    if (random.nextDouble() < fraction) {
+                        consumer.accept(items, length);
+                    }
+                });
+            }
+        };
+    }
+
+    // Baskets rewritten to the indexes of their mapped items, in basket order;
+    // items without an index (missing value -1) are dropped, empty baskets are kept.
+    default BasketSource remap(IntIntHashMap indexes) {
+        BasketSource source = this;
+        return new BasketSource() {
+            @Override
+            public int size() {
+                return source.size();
+            }
+
+            @Override
+            public void forEach(BasketConsumer consumer) throws IOException {
+                int[][] mapped = {new int[16]};
+                source.forEach((items, length) -> {
+                    if (mapped[0].length < length) {
+                        mapped[0] = new int[Math.max(length, 2 * mapped[0].length)];
+                    }
+                    int n = 0;
+                    for (int i = 0; i < length; i++) {
+                        int index = indexes.get(items[i]);
+                        if (index >= 0) {
+                            mapped[0][n++] = index;
+                        }
+                    }
+                    consumer.accept(mapped[0], n);
+                });
+            }
+        };
+    }
+
+    // Copies every basket into memory, so later passes no longer touch the underlying source.
+    default BasketSource materialize() throws IOException {
+        List<int[]> baskets = new ArrayList<>(size());
+        forEach((items, length) -> baskets.add(Arrays.copyOf(items, length)));
+        int declared = size();
+        BasketSource copy = of(baskets.toArray(new int[0][]));
+        return new BasketSource() {
+            @Override
+            public int size() {
+                return declared;
+            }
+
+            @Override
+            public void forEach(BasketConsumer consumer) throws IOException {
+                copy.forEach(consumer);
+            }
+        };
+    }
+
+    static BasketSource of(int[][] baskets) {
+        return new BasketSource() {
+            @Override
+            public int size() {
+                return baskets.length;
+            }
+
+            @Override
+            public void forEach(BasketConsumer consumer) {
+                for (int[] basket : baskets) {
+                    consumer.accept(basket, basket.length);
+                }
+            }
+        };
+    }
+
+}
@@ -0,0 +1,22 @@
+// Bucket counts reduced to one bit per bucket, set when the bucket is frequent,
+// which leaves the memory of the counts to the following passes.
+public final class BucketBitmap {
+
+    private BucketBitmap() {
+    }
+
+    public static long[] of(int[] counts, double threshold) {
+        long[] bitmap = new long[(counts.length + Long.SIZE - 1) / Long.SIZE];
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] >= threshold) {
+                bitmap[i >>> 6] |= 1L << i;
+            }
+        }
+        return bitmap;
+    }
+
+    public static boolean isFrequent(long[] bitmap, int bucket) {
+        return (bitmap[bucket >>> 6] & (1L << bucket)) != 0;
+    }
+
+}
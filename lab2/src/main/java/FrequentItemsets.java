@@ -0,0 +1,299 @@
+import java.io.IOException;
+import java.util.*;
+
+// Level-wise frequent itemset mining on top of the PCY passes.
+// Level 1 counts items, level 2 is PCY (bucket bitmap, then pair counting) and every further level
+// joins the frequent (k-1)-itemsets into candidates, prunes those with an infrequent subset and counts
+// the rest in one pass. Items are remapped to dense indexes and itemsets are kept in flat int tables.
+// Every pass re-streams the baskets and can run on several threads, like PCY.
+//
+// Output, per level k until no itemset is frequent: a line "k=<k> <n>" followed by the n frequent
+// k-itemsets as "support item1 ... itemk", by support descending.
+public class FrequentItemsets {
+
+    static {
+        RuntimeReport.install();
+    }
+
+    private static final String LINE_SEP = System.lineSeparator();
+    // levels.get(k - 1) holds the frequent k-itemsets with their supports.
+    private static final List<ItemsetTable> LEVELS = new ArrayList<>();
+
+    private static BasketSource baskets;
+    private static int threads;
+    private static double threshold;
+    private static int numOfBuckets;
+    // Dense index -> raw item id and back, for frequent items only.
+    private static int[] itemOf;
+    private static IntIntHashMap indexOf;
+    private static long[] frequentBuckets;
+
+    // Usage: FrequentItemsets [basket file] [--threads T] [--max-k K]
+    // Input has the same format as for PCY.
+    public static void main(String[] args) throws IOException {
+        Options options = Options.parse(args);
+        threads = options.getInt("threads", 1);
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        int maxK = options.getInt("max-k", Integer.MAX_VALUE);
+        BasketInput input = BasketInput.open(options);
+        baskets = input.baskets();
+        threshold = input.threshold();
+        numOfBuckets = input.numOfBuckets();
+        countItems();
+        if (maxK >= 2 && itemOf.length >= 2) {
+            hashPairs();
+            countPairs();
+        }
+        for (int k = 3; k <= maxK && LEVELS.size() >= k - 1 && LEVELS.get(k - 2).size() >= 2; k++) {
+            ItemsetTable candidates = generateCandidates(LEVELS.get(k - 2));
+            if (candidates.size() == 0) break;
+            countCandidates(candidates);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (ItemsetTable level : LEVELS) {
+            if (level.size() == 0) break;
+            appendLevel(sb, level);
+        }
+        sb.setLength(Math.max(0, sb.length() - LINE_SEP.length()));
+        System.out.println(sb);
+    }
+
+    private static void countItems() throws IOException {
+        ItemCounter counter = ItemCounter.merge(ParallelPasses.run(baskets, threads, () -> new ItemCounter(true)));
+        itemOf = counter.frequentItems(threshold);
+        indexOf = new IntIntHashMap(itemOf.length, -1);
+        ItemsetTable items = new ItemsetTable(1, itemOf.length);
+        int[] item = new int[1];
+        for (int i = 0; i < itemOf.length; i++) {
+            indexOf.put(itemOf[i], i);
+            item[0] = i;
+            items.setCountAt(items.add(item, 0), counter.frequency(itemOf[i]));
+        }
+        LEVELS.add(items);
+    }
+
+    // PCY first pass over frequent pairs, reduced to a bitmap of frequent buckets.
+    private static void hashPairs() throws IOException {
+        List<PairHasher> hashers = ParallelPasses.run(baskets, threads, PairHasher::new);
+        int[] counts = hashers.get(0).counts;
+        for (PairHasher hasher : hashers.subList(1, hashers.size())) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += hasher.counts[i];
+            }
+        }
+        frequentBuckets = BucketBitmap.of(counts, threshold);
+    }
+
+    private static void countPairs() throws IOException {
+        List<PairCounter> counters = ParallelPasses.run(baskets, threads, PairCounter::new);
+        LongIntHashMap sums = counters.get(0).sums;
+        for (PairCounter counter : counters.subList(1, counters.size())) {
+            sums.addAll(counter.sums);
+        }
+        ItemsetTable pairs = new ItemsetTable(2, sums.size());
+        int[] pair = new int[2];
+        long m = itemOf.length;
+        for (int slot = 0; slot < sums.capacity(); slot++) {
+            int count = sums.valueAt(slot);
+            if (count != 0 && count >= threshold) {
+                long key = sums.keyAt(slot);
+                pair[0] = (int) (key / m);
+                pair[1] = (int) (key % m);
+                pairs.setCountAt(pairs.add(pair, 0), count);
+            }
+        }
+        frequentBuckets = null;
+        LEVELS.add(pairs);
+    }
+
+    // Apriori join of (k-1)-itemsets sharing their first k-2 items, keeping only candidates
+    // whose every (k-1)-subset is frequent.
+    private static ItemsetTable generateCandidates(ItemsetTable previous) {
+        int k = previous.k() + 1;
+        int[][] rows = new int[previous.size()][];
+        for (int slot = 0, n = 0; slot < previous.capacity(); slot++) {
+            if (!previous.usedAt(slot)) continue;
+            rows[n] = new int[k - 1];
+            for (int p = 0; p < k - 1; p++) {
+                rows[n][p] = previous.itemAt(slot, p);
+            }
+            n++;
+        }
+        Arrays.sort(rows, Arrays::compare);
+        ItemsetTable candidates = new ItemsetTable(k, rows.length);
+        int[] candidate = new int[k];
+        int[] subset = new int[k - 1];
+        for (int i = 0; i < rows.length; i++) {
+            for (int j = i + 1; j < rows.length && Arrays.equals(rows[i], 0, k - 2, rows[j], 0, k - 2); j++) {
+                System.arraycopy(rows[i], 0, candidate, 0, k - 1);
+                candidate[k - 1] = rows[j][k - 2];
+                if (hasFrequentSubsets(previous, candidate, subset)) {
+                    candidates.add(candidate, 0);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    // Subsets without the last or the second to last item are the joined rows themselves.
+    private static boolean hasFrequentSubsets(ItemsetTable previous, int[] candidate, int[] subset) {
+        int k = candidate.length;
+        for (int drop = 0; drop < k - 2; drop++) {
+            for (int p = 0, q = 0; p < k; p++) {
+                if (p != drop) subset[q++] = candidate[p];
+            }
+            if (previous.indexOf(subset, 0) < 0) return false;
+        }
+        return true;
+    }
+
+    private static void countCandidates(ItemsetTable candidates) throws IOException {
+        List<CandidateCounter> counters = ParallelPasses.run(
+                baskets, threads, () -> new CandidateCounter(candidates)
+        );
+        for (CandidateCounter counter : counters) {
+            candidates.addCounts(counter.counts);
+        }
+        ItemsetTable frequent = new ItemsetTable(candidates.k(), candidates.size());
+        int[] itemset = new int[candidates.k()];
+        for (int slot = 0; slot < candidates.capacity(); slot++) {
+            if (candidates.usedAt(slot) && candidates.countAt(slot) >= threshold) {
+                for (int p = 0; p < itemset.length; p++) {
+                    itemset[p] = candidates.itemAt(slot, p);
+                }
+                frequent.setCountAt(frequent.add(itemset, 0), candidates.countAt(slot));
+            }
+        }
+        LEVELS.add(frequent);
+    }
+
+    private static void appendLevel(StringBuilder sb, ItemsetTable level) {
+        int k = level.k();
+        int[][] rows = new int[level.size()][];
+        for (int slot = 0, n = 0; slot < level.capacity(); slot++) {
+            if (!level.usedAt(slot)) continue;
+            // Support first, then the raw item ids.
+            rows[n] = new int[k + 1];
+            rows[n][0] = level.countAt(slot);
+            for (int p = 0; p < k; p++) {
+                rows[n][p + 1] = itemOf[level.itemAt(slot, p)];
+            }
+            n++;
+        }
+        Arrays.sort(rows, (r1, r2) -> r1[0] != r2[0] ? Integer.compare(r2[0], r1[0]) : Arrays.compare(r1, r2));
+        sb.append("k=").append(k).append(' ').append(rows.length).append(LINE_SEP);
+        for (int[] row : rows) {
+            for (int p = 0; p <= k; p++) {
+                if (p > 0) sb.append(' ');
+                sb.append(row[p]);
+            }
+            sb.append(LINE_SEP);
+        }
+    }
+
+    // Maps a basket to the ascending, distinct dense indexes of its frequent items; returns their count.
+    private static int toFrequent(int[] basket, int length, int[] out) {
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            int index = indexOf.get(basket[i]);
+            if (index >= 0) out[n++] = index;
+        }
+        Arrays.sort(out, 0, n);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct == 0 || out[distinct - 1] != out[i]) out[distinct++] = out[i];
+        }
+        return distinct;
+    }
+
+    private static int bucketOf(int i, int j) {
+        return (int) (((long) i * itemOf.length + j) % numOfBuckets);
+    }
+
+    // Pass workers, run by ParallelPasses.
+
+    private abstract static class FrequentItemsWorker implements BasketConsumer {
+
+        private int[] items = new int[64];
+
+        @Override
+        public void accept(int[] basket, int length) {
+            if (items.length < length) {
+                items = new int[Math.max(length, 2 * items.length)];
+            }
+            int n = toFrequent(basket, length, items);
+            if (n > 0) acceptFrequent(items, n);
+        }
+
+        // Receives the ascending dense indexes of a basket's frequent items.
+        protected abstract void acceptFrequent(int[] items, int n);
+    }
+
+    private static final class PairHasher extends FrequentItemsWorker {
+
+        private final int[] counts = new int[numOfBuckets];
+
+        @Override
+        protected void acceptFrequent(int[] items, int n) {
+            for (int i = 0; i < n - 1; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    counts[bucketOf(items[i], items[j])]++;
+                }
+            }
+        }
+    }
+
+    private static final class PairCounter extends FrequentItemsWorker {
+
+        private final LongIntHashMap sums = new LongIntHashMap(1 << 16);
+
+        @Override
+        protected void acceptFrequent(int[] items, int n) {
+            for (int i = 0; i < n - 1; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    int bucket = bucketOf(items[i], items[j]);
+                    if (BucketBitmap.isFrequent(frequentBuckets, bucket)) {
+                        sums.increment((long) items[i] * itemOf.length + items[j]);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class CandidateCounter extends FrequentItemsWorker {
+
+        private final ItemsetTable candidates;
+        private final int k;
+        private final int[] counts;
+        private final int[] combination;
+
+        private CandidateCounter(ItemsetTable candidates) {
+            this.candidates = candidates;
+            this.k = candidates.k();
+            this.counts = new int[candidates.capacity()];
+            this.combination = new int[k];
+        }
+
+        @Override
+        protected void acceptFrequent(int[] items, int n) {
+            if (n >= k) enumerate(items, n, 0, 0);
+        }
+
+        // Builds k-combinations of the basket, abandoning any prefix that is not a frequent itemset.
+        private void enumerate(int[] items, int n, int start, int depth) {
+            if (depth == k) {
+                int slot = candidates.indexOf(combination, 0);
+                if (slot >= 0) counts[slot]++;
+                return;
+            }
+            if (depth >= 2 && LEVELS.get(depth - 1).indexOf(combination, 0) < 0) return;
+            for (int i = start; i <= n - (k - depth); i++) {
+                combination[depth] = items[i];
+                enumerate(items, n, i + 1, depth + 1);
+            }
+        }
+    }
+
+}
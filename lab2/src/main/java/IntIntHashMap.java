@@ -0,0 +1,99 @@
+// Open-addressing (linear probing) map from int keys to int values.
+// Used to translate sparse raw item ids into dense indexes and to count raw items without boxing.
+public final class IntIntHashMap {
+
+    private final int missingValue;
+    private int[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+
+    // missingValue is returned by get for absent keys.
+    public IntIntHashMap(int expectedSize, int missingValue) {
+        this.missingValue = missingValue;
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void put(int key, int value) {
+        int slot = slot(key);
+        values[slot] = value;
+        if (!used[slot]) {
+            used[slot] = true;
+            keys[slot] = key;
+            if (++size * 2 > keys.length) {
+                rehash();
+            }
+        }
+    }
+
+    // Adds delta to key's value, an absent key starting from 0, and returns the new value.
+    public int add(int key, int delta) {
+        int slot = slot(key);
+        if (used[slot]) {
+            return values[slot] += delta;
+        }
+        put(key, delta);
+        return delta;
+    }
+
+    public int increment(int key) {
+        return add(key, 1);
+    }
+
+    public int get(int key) {
+        int slot = slot(key);
+        return used[slot] ? values[slot] : missingValue;
+    }
+
+    // Raw slots for iteration: slot i holds (keyAt(i), valueAt(i)) when usedAt(i).
+    public int capacity() {
+        return keys.length;
+    }
+
+    public boolean usedAt(int slot) {
+        return used[slot];
+    }
+
+    public int keyAt(int slot) {
+        return keys[slot];
+    }
+
+    public int valueAt(int slot) {
+        return values[slot];
+    }
+
+    private int slot(int key) {
+        int m = keys.length - 1;
+        int h = key * 0x9E3779B9;
+        int slot = (h ^ (h >>> 16)) & m;
+        while (used[slot] && keys[slot] != key) {
+            slot = (slot + 1) & m;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        used = new boolean[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = slot(oldKeys[i]);
+                used[slot] = true;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+import java.util.Arrays;
+import java.util.List;
+
+// First pass worker: frequencies of the raw item ids, and whether every basket lists its items
+// in strictly increasing order.
+public final class ItemCounter implements BasketConsumer {
+
+    private final boolean oncePerBasket;
+    // Frequency of every raw item id seen, 0 for an unseen one.
+    private final IntIntHashMap frequencies = new IntIntHashMap(1 << 10, 0);
+    private boolean increasing = true;
+
+    // With oncePerBasket an item repeated within a basket is counted once, as an itemset support requires;
+    // otherwise every occurrence counts, as in the original PCY.
+    public ItemCounter(boolean oncePerBasket) {
+        this.oncePerBasket = oncePerBasket;
+    }
+
+    @Override
+    public void accept(int[] basket, int length) {
+        boolean sorted = true;
+        for (int i = 1; i < length && sorted; i++) {
+            sorted = basket[i - 1] < basket[i];
+        }
+        increasing &= sorted;
+        if (oncePerBasket && !sorted) {
+            int[] items = Arrays.copyOf(basket, length);
+            Arrays.sort(items);
+            for (int i = 0; i < length; i++) {
+                if (i == 0 || items[i] != items[i - 1]) {
+                    frequencies.increment(items[i]);
+                }
+            }
+            return;
+        }
+        // For each item in the basket, update its frequency.
+        for (int i = 0; i < length; i++) {
+            frequencies.increment(basket[i]);
+        }
+    }
+
+    // Merges the counters of a pass into the first one and returns it.
+    public static ItemCounter merge(List<ItemCounter> counters) {
+        ItemCounter first = counters.get(0);
+        for (ItemCounter counter : counters.subList(1, counters.size())) {
+            IntIntHashMap frequencies = counter.frequencies;
+            for (int slot = 0; slot < frequencies.capacity(); slot++) {
+                if (frequencies.usedAt(slot)) {
+                    first.frequencies.add(frequencies.keyAt(slot), frequencies.valueAt(slot));
+                }
+            }
+            first.increasing &= counter.increasing;
+        }
+        return first;
+    }
+
+    // Number of distinct raw item ids seen.
+    public int distinctItems() {
+        return frequencies.size();
+    }
+
+    public int frequency(int item) {
+        return frequencies.get(item);
+    }
+
+    public boolean increasing() {
+        return increasing;
+    }
+
+    // Raw ids of the items with a frequency of at least threshold, in ascending order.
+    public int[] frequentItems(double threshold) {
+        int[] items = new int[frequencies.size()];
+        int n = 0;
+        for (int slot = 0; slot < frequencies.capacity(); slot++) {
+            if (frequencies.usedAt(slot) && frequencies.valueAt(slot) >= threshold) {
+                items[n++] = frequencies.keyAt(slot);
+            }
+        }
+        Arrays.sort(items, 0, n);
+        return Arrays.copyOf(items, n);
+    }
+
+}
@@ -0,0 +1,112 @@
+import java.util.Arrays;
+
+// Open-addressing table of k-itemsets with a count each.
+// An itemset is k ascending dense item indexes, stored flat in an int[] with stride k,
+// so neither itemsets nor counts are boxed. Slots are stable once the table is no longer growing,
+// which lets pass workers count into private int[capacity()] arrays that are summed afterwards.
+public final class ItemsetTable {
+
+    private final int k;
+    private int[] keys;
+    private boolean[] used;
+    private int[] counts;
+    private int size;
+
+    public ItemsetTable(int k, int expectedSize) {
+        this.k = k;
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        keys = new int[capacity * k];
+        used = new boolean[capacity];
+        counts = new int[capacity];
+    }
+
+    public int k() {
+        return k;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return used.length;
+    }
+
+    // Inserts items[offset .. offset + k) if absent and returns its slot.
+    public int add(int[] items, int offset) {
+        int slot = slot(items, offset);
+        if (!used[slot]) {
+            used[slot] = true;
+            System.arraycopy(items, offset, keys, slot * k, k);
+            if (++size * 2 > used.length) {
+                rehash();
+                slot = slot(items, offset);
+            }
+        }
+        return slot;
+    }
+
+    // Slot of items[offset .. offset + k), or -1 if absent.
+    public int indexOf(int[] items, int offset) {
+        int slot = slot(items, offset);
+        return used[slot] ? slot : -1;
+    }
+
+    public boolean usedAt(int slot) {
+        return used[slot];
+    }
+
+    public int itemAt(int slot, int position) {
+        return keys[slot * k + position];
+    }
+
+    public int countAt(int slot) {
+        return counts[slot];
+    }
+
+    public void setCountAt(int slot, int count) {
+        counts[slot] = count;
+    }
+
+    // Adds per-slot counts gathered by a pass worker.
+    public void addCounts(int[] slotCounts) {
+        for (int i = 0; i < slotCounts.length; i++) {
+            counts[i] += slotCounts[i];
+        }
+    }
+
+    private int slot(int[] items, int offset) {
+        int m = used.length - 1;
+        int slot = hash(items, offset) & m;
+        while (used[slot] && !Arrays.equals(keys, slot * k, slot * k + k, items, offset, offset + k)) {
+            slot = (slot + 1) & m;
+        }
+        return slot;
+    }
+
+    private int hash(int[] items, int offset) {
+        int h = 0;
+        for (int i = offset; i < offset + k; i++) {
+            h = (h + items[i]) * 0x9E3779B9;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private void rehash() {
+        int[] oldKeys = keys;
+        boolean[] oldUsed = used;
+        int[] oldCounts = counts;
+        keys = new int[oldKeys.length * 2];
+        used = new boolean[oldUsed.length * 2];
+        counts = new int[oldCounts.length * 2];
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) {
+                int slot = slot(oldKeys, i * k);
+                used[slot] = true;
+                System.arraycopy(oldKeys, i * k, keys, slot * k, k);
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+import java.util.Arrays;
+
+// Open-addressing (linear probing) map from long keys to positive int counts.
+// A zero count marks an empty slot, so counting never allocates except when the table grows.
+public final class LongIntHashMap {
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Adds delta (> 0) to key's count and returns the new count.
+    public int add(long key, int delta) {
+        int m = keys.length - 1;
+        int slot = mix(key) & m;
+        while (values[slot] != 0) {
+            if (keys[slot] == key) {
+                return values[slot] += delta;
+            }
+            slot = (slot + 1) & m;
+        }
+        keys[slot] = key;
+        values[slot] = delta;
+        if (++size * 4 > keys.length * 3) {
+            rehash();
+        }
+        return delta;
+    }
+
+    public int increment(long key) {
+        return add(key, 1);
+    }
+
+    // Adds every count of other to this map.
+    public void addAll(LongIntHashMap other) {
+        for (int slot = 0; slot < other.capacity(); slot++) {
+            if (other.valueAt(slot) != 0) {
+                add(other.keyAt(slot), other.valueAt(slot));
+            }
+        }
+    }
+
+    // Count of key, 0 if absent.
+    public int get(long key) {
+        int m = keys.length - 1;
+        int slot = mix(key) & m;
+        while (values[slot] != 0) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & m;
+        }
+        return 0;
+    }
+
+    // Counts of all keys, in no particular order.
+    public int[] values() {
+        int[] result = new int[size];
+        int n = 0;
+        for (int value : values) {
+            if (value != 0) result[n++] = value;
+        }
+        return result;
+    }
+
+    // Raw slots for iteration: slot i holds keyAt(i) when valueAt(i) != 0.
+    public int capacity() {
+        return keys.length;
+    }
+
+    public long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    public int valueAt(int slot) {
+        return values[slot];
+    }
+
+    public void clear() {
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        int m = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != 0) {
+                int slot = mix(oldKeys[i]) & m;
+                while (values[slot] != 0) {
+                    slot = (slot + 1) & m;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+}
@@ -1,103 +1,360 @@
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 public class PCY {
 
     static {
-        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
-            final long start = System.nanoTime();
-
-            @Override
-            public void run() {
-                System.err.printf(Locale.US, "Runtime: %.6fs%n", (System.nanoTime() - start) * 1e-9);
-            }
-        }));
+        RuntimeReport.install();
     }
 
     private static final String LINE_SEP = System.lineSeparator();
-    private static final Map<Integer, Integer> ITEMS_FREQUENCIES = new HashMap<>();
-    private static final Set<Integer> FREQUENT_ITEMS = new HashSet<>();
-    private static final Map<IntPair, Integer> PAIRS_SUMS = new HashMap<>();
+    // Largest triangular pair count array, summed over all worker threads.
+    private static final long MAX_TRIANGLE_CELLS = 1L << 25;
 
-    private static List<List<Integer>> baskets;
+    // Raw item id of every frequent item, indexed by its dense index; ids are in ascending order.
+    // After the first pass the baskets hold dense indexes of their frequent items only.
+    private static int[] itemOf;
+    // Whether every basket lists its items in strictly increasing order, so that pairs are unordered.
+    private static boolean increasingBaskets;
+    // Ordered pair (i, j) of dense indexes is keyed as pairKey(i, j).
+    private static LongIntHashMap pairsSums;
+    private static BasketSource baskets;
+    private static int threads;
     private static double threshold;
     private static int numOfBuckets;
-    private static int[] buckets;
+    // Number of buckets in every hash table; table 0 uses the original PCY hash.
+    private static int[] tableSizes;
+    // Frequent buckets of every filled table, see BucketBitmap.
+    private static long[][] frequentBuckets;
+    // Number of distinct raw items, which the original PCY hash (table 0) multiplies by.
     private static int numOfItems;
+    // Pair occurrences that passed table 0 but were rejected by one of the extra tables.
+    private static long eliminated;
+
+    private enum Variant {
+        // One hash table filled during the first pass.
+        PCY,
+        // An extra pass rehashes pairs from frequent buckets of table 0 into table 1.
+        MULTISTAGE,
+        // Several independent hash tables, sharing the buckets, filled in the same pass.
+        MULTIHASH;
+
+        private static Variant of(String name) {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        }
+    }
 
+    // Usage: PCY [basket file] [--threads T] [--variant pcy|multistage|multihash] [--tables N]
+    //            [--sample F [--slack L] [--seed S]] [--son P]
+    // Without a file the input is read from stdin and kept in memory,
+    // with a file every pass re-streams the baskets from disk.
+    // Each pass runs on T threads (T <= 0 uses every available core) with the same result.
+    // Multistage and multihash (with N tables, default 2) count fewer candidate pairs,
+    // the number of eliminated pair occurrences is reported on stderr.
+    // --sample mines an F fraction of the baskets with the threshold lowered by L (default 0.9)
+    // and prints pair counts scaled back to the whole input; the result is approximate.
+    // --son mines P partitions concurrently and verifies the union of their local frequent pairs
+    // in one global pass; the frequent pairs are exact, the second line holds the number of verified candidates.
+    // SON always mines the partitions with plain A-Priori, so it cannot be combined with --variant or --tables.
     public static void main(String[] args) throws IOException {
-        readInput();
-        hashPairs();
+        Options options = Options.parse(args);
+        Variant variant = Variant.of(options.get("variant", "pcy"));
+        double fraction = Double.parseDouble(options.get("sample", "1"));
+        int numOfPartitions = options.getInt("son", 0);
+        threads = options.getInt("threads", 1);
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        if (numOfPartitions > 0 && (variant != Variant.PCY || options.get("tables", null) != null)) {
+            throw new IllegalArgumentException("--son cannot be combined with --variant or --tables!");
+        }
+        BasketInput input = BasketInput.open(options);
+        baskets = input.baskets();
+        threshold = input.threshold();
+        numOfBuckets = input.numOfBuckets();
+        if (fraction < 1) {
+            baskets = baskets.sample(fraction, Long.parseLong(options.get("seed", "42")));
+            threshold *= fraction * Double.parseDouble(options.get("slack", "0.9"));
+        }
+        countItems();
+        remapItems(input.inMemory());
+        if (numOfPartitions > 0) {
+            son(numOfPartitions);
+            printResults(fraction);
+            return;
+        }
+        switch (variant) {
+            case PCY -> {
+                createTables(1, numOfBuckets);
+                hashPairs(0, 1);
+            }
+            case MULTISTAGE -> {
+                createTables(2, numOfBuckets);
+                hashPairs(0, 1);
+                hashPairs(1, 2);
+            }
+            case MULTIHASH -> {
+                int numOfTables = options.getInt("tables", 2);
+                createTables(numOfTables, numOfBuckets / numOfTables);
+                hashPairs(0, numOfTables);
+            }
+        }
         countPairs();
-        int m = FREQUENT_ITEMS.size();
+        if (variant != Variant.PCY) {
+            System.err.printf("%s: %d candidate pairs counted, %d pair occurrences eliminated by %d extra table(s)%n",
+                    variant, pairsSums.size(), eliminated, tableSizes.length - 1);
+        }
+        printResults(fraction);
+    }
+
+    private static void printResults(double fraction) {
+        int m = itemOf.length;
         StringBuilder sb = new StringBuilder();
         sb.append(m * (m - 1) / 2).append(LINE_SEP);
-        sb.append(PAIRS_SUMS.size()).append(LINE_SEP);
-        PAIRS_SUMS.values().stream()
+        sb.append(pairsSums.size()).append(LINE_SEP);
+        int[] sums = Arrays.stream(pairsSums.values())
                 .filter(sum -> sum >= threshold)
-                .sorted(Collections.reverseOrder())
-                .forEach(v -> sb.append(v).append(LINE_SEP));
+                .sorted()
+                .toArray();
+        for (int i = sums.length - 1; i >= 0; i--) {
+            sb.append(fraction < 1 ? Math.round(sums[i] / fraction) : sums[i]).append(LINE_SEP);
+        }
         sb.setLength(sb.length() - LINE_SEP.length());
         System.out.println(sb.toString());
     }
 
-    private static void readInput() throws IOException {
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(System.in))) {
-            // Read the number of baskets.
-            int numOfBaskets = Integer.parseInt(br.readLine().strip());
-            baskets = new ArrayList<>(numOfBaskets);
-            // Read s and calculate threshold.
-            threshold = Double.parseDouble(br.readLine().strip()) * numOfBaskets;
-            // Read the number of buckets.
-            numOfBuckets = Integer.parseInt(br.readLine().strip());
-            buckets = new int[numOfBuckets];
-            // Read every bucket.
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.strip().split("\\s+");
-                List<Integer> basket = new ArrayList<>(parts.length);
-                // For each item in the bucket, calculate its frequency.
-                for (String part : parts) {
-                    int item = Integer.parseInt(part);
-                    basket.add(item);
-                    int frequency = ITEMS_FREQUENCIES.merge(item, 1, Integer::sum);
-                    if (frequency >= threshold) {
-                        FREQUENT_ITEMS.add(item);
+    private static void countItems() throws IOException {
+        ItemCounter counter = ItemCounter.merge(ParallelPasses.run(baskets, threads, () -> new ItemCounter(false)));
+        itemOf = counter.frequentItems(threshold);
+        numOfItems = counter.distinctItems();
+        increasingBaskets = counter.increasing();
+    }
+
+    // Rewrites the baskets into dense indexes of their frequent items, so the pair passes neither
+    // probe a set nor skip infrequent items. In-memory input is rewritten once, a file on every pass.
+    private static void remapItems(boolean inMemory) throws IOException {
+        IntIntHashMap indexes = new IntIntHashMap(itemOf.length, -1);
+        for (int index = 0; index < itemOf.length; index++) {
+            indexes.put(itemOf[index], index);
+        }
+        baskets = baskets.remap(indexes);
+        if (inMemory) {
+            baskets = baskets.materialize();
+        }
+    }
+
+    private static void createTables(int numOfTables, int tableSize) {
+        if (numOfTables < 1 || tableSize < 1) {
+            throw new IllegalArgumentException("Cannot split " + numOfBuckets + " buckets into " + numOfTables
+                    + " tables!");
+        }
+        tableSizes = new int[numOfTables];
+        Arrays.fill(tableSizes, tableSize);
+        frequentBuckets = new long[numOfTables][];
+    }
+
+    // Fills tables [from, to) with the pairs that are frequent in every earlier table.
+    private static void hashPairs(int from, int to) throws IOException {
+        List<PairHasher> hashers = ParallelPasses.run(baskets, threads, () -> new PairHasher(from, to));
+        for (int t = from; t < to; t++) {
+            int[] counts = hashers.get(0).counts[t - from];
+            for (PairHasher hasher : hashers.subList(1, hashers.size())) {
+                int[] other = hasher.counts[t - from];
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] += other[i];
+                }
+            }
+            frequentBuckets[t] = BucketBitmap.of(counts, threshold);
+        }
+    }
+
+    // With increasing baskets and few enough frequent items the pairs are counted in a triangular array,
+    // otherwise in a hash map keyed by the ordered pair.
+    private static void countPairs() throws IOException {
+        int m = itemOf.length;
+        long cells = (long) m * (m - 1) / 2;
+        boolean triangular = increasingBaskets && cells * threads <= MAX_TRIANGLE_CELLS;
+        List<PairCounter> counters = ParallelPasses.run(baskets, threads,
+                () -> new PairCounter(triangular ? (int) cells : -1));
+        PairCounter first = counters.get(0);
+        eliminated = first.eliminated;
+        for (PairCounter counter : counters.subList(1, counters.size())) {
+            if (triangular) {
+                for (int cell = 0; cell < cells; cell++) {
+                    first.triangle[cell] += counter.triangle[cell];
+                }
+            } else {
+                first.sums.addAll(counter.sums);
+            }
+            eliminated += counter.eliminated;
+        }
+        pairsSums = first.sums;
+        if (triangular) {
+            for (int i = 0, cell = 0; i < m; i++) {
+                for (int j = i + 1; j < m; j++, cell++) {
+                    if (first.triangle[cell] != 0) {
+                        pairsSums.add(pairKey(i, j), first.triangle[cell]);
+                    }
+                }
+            }
+        }
+    }
+
+    // Cell of pair (i, j), i < j, in a row-major upper triangle over m items.
+    private static int triangleCell(int i, int j) {
+        int m = itemOf.length;
+        return (int) ((long) i * (2 * m - i - 1) / 2) + (j - i - 1);
+    }
+
+    // Table 0 keeps the original PCY hash, the other tables use independent mixes of the pair.
+    private static int bucketOf(int table, int i, int j) {
+        int size = tableSizes[table];
+        if (table == 0) {
+            return Math.floorMod((i * numOfItems) + j, size);
+        }
+        long h = pairKey(i, j) + table * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) Math.floorMod(h, (long) size);
+    }
+
+    // Whether the pair of dense indexes (a, b) falls into a frequent bucket of every table in [from, to);
+    // the buckets are still chosen by the raw item ids.
+    private static boolean isCandidate(int a, int b, int from, int to) {
+        for (int t = from; t < to; t++) {
+            int bucket = bucketOf(t, itemOf[a], itemOf[b]);
+            if (!BucketBitmap.isFrequent(frequentBuckets[t], bucket)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // SON: phase one mines partitions of the baskets concurrently, each exactly and in memory with a
+    // threshold proportional to its size, so every globally frequent pair is locally frequent somewhere.
+    // Phase two counts the union of the local frequent pairs over all baskets.
+    private static void son(int numOfPartitions) throws IOException {
+        int partitionSize = Math.max(1, (baskets.size() + numOfPartitions - 1) / numOfPartitions);
+        double support = threshold / baskets.size();
+        LongIntHashMap candidates = new LongIntHashMap(1 << 16);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        // Bounds the partitions held in memory at once.
+        Semaphore inFlight = new Semaphore(threads);
+        List<Future<LongIntHashMap>> futures = new ArrayList<>();
+        try {
+            List<int[]> partition = new ArrayList<>(partitionSize);
+            baskets.forEach((items, length) -> {
+                partition.add(Arrays.copyOf(items, length));
+                if (partition.size() == partitionSize) {
+                    futures.add(submitPartition(pool, inFlight, new ArrayList<>(partition), support));
+                    partition.clear();
+                }
+            });
+            if (!partition.isEmpty()) {
+                futures.add(submitPartition(pool, inFlight, partition, support));
+            }
+            for (Future<LongIntHashMap> future : futures) {
+                LongIntHashMap local = future.get();
+                for (int slot = 0; slot < local.capacity(); slot++) {
+                    if (local.valueAt(slot) != 0) {
+                        candidates.add(local.keyAt(slot), 1);
                     }
                 }
-                baskets.add(basket);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("SON was interrupted!", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("SON partition failed!", e.getCause());
+        } finally {
+            pool.shutdownNow();
         }
-        numOfItems = ITEMS_FREQUENCIES.size();
+        List<CandidateCounter> counters = ParallelPasses.run(baskets, threads, () -> new CandidateCounter(candidates));
+        pairsSums = counters.get(0).sums;
+        for (CandidateCounter counter : counters.subList(1, counters.size())) {
+            pairsSums.addAll(counter.sums);
+        }
+    }
+
+    private static Future<LongIntHashMap> submitPartition(ExecutorService pool, Semaphore inFlight,
+                                                          List<int[]> partition, double support) {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("SON was interrupted!", e);
+        }
+        return pool.submit(() -> {
+            try {
+                return localFrequentPairs(partition, support * partition.size());
+            } finally {
+                inFlight.release();
+            }
+        });
     }
 
-    private static void hashPairs() {
-        for (List<Integer> basket : baskets) {
-            for (int i = 0; i < basket.size() - 1; i++) {
-                int ithItem = basket.get(i);
-                if (!FREQUENT_ITEMS.contains(ithItem)) continue;
-                for (int j = i + 1; j < basket.size(); j++) {
-                    int jthItem = basket.get(j);
-                    if (FREQUENT_ITEMS.contains(jthItem)) {
-                        buckets[((ithItem * numOfItems) + jthItem) % numOfBuckets]++;
+    // Exact in-memory A-Priori over one partition; returns its frequent pairs.
+    private static LongIntHashMap localFrequentPairs(List<int[]> partition, double localThreshold) {
+        int[] frequencies = new int[itemOf.length];
+        for (int[] basket : partition) {
+            for (int item : basket) {
+                frequencies[item]++;
+            }
+        }
+        LongIntHashMap sums = new LongIntHashMap(1 << 10);
+        for (int[] basket : partition) {
+            for (int i = 0; i < basket.length - 1; i++) {
+                if (frequencies[basket[i]] < localThreshold) continue;
+                for (int j = i + 1; j < basket.length; j++) {
+                    if (frequencies[basket[j]] >= localThreshold) {
+                        sums.increment(pairKey(basket[i], basket[j]));
                     }
                 }
             }
         }
+        LongIntHashMap frequentPairs = new LongIntHashMap(1 << 10);
+        for (int slot = 0; slot < sums.capacity(); slot++) {
+            if (sums.valueAt(slot) != 0 && sums.valueAt(slot) >= localThreshold) {
+                frequentPairs.add(sums.keyAt(slot), sums.valueAt(slot));
+            }
+        }
+        return frequentPairs;
     }
 
-    private static void countPairs() {
-        for (List<Integer> basket : baskets) {
-            for (int i = 0; i < basket.size() - 1; i++) {
-                int ithItem = basket.get(i);
-                if (!FREQUENT_ITEMS.contains(ithItem)) continue;
-                for (int j = i + 1; j < basket.size(); j++) {
-                    int jthItem = basket.get(j);
-                    if (FREQUENT_ITEMS.contains(jthItem)) {
-                        if (buckets[((ithItem * numOfItems) + jthItem) % numOfBuckets] >= threshold) {
-                            PAIRS_SUMS.merge(IntPair.of(ithItem, jthItem), 1, Integer::sum);
+    // Pass workers, run by ParallelPasses.
+
+    private static final class PairHasher implements BasketConsumer {
+
+        private final int from;
+        private final int to;
+        private final int[][] counts;
+
+        private PairHasher(int from, int to) {
+            this.from = from;
+            this.to = to;
+            this.counts = new int[to - from][];
+            for (int t = from; t < to; t++) {
+                counts[t - from] = new int[tableSizes[t]];
+            }
+        }
+
+        @Override
+        public void accept(int[] basket, int length) {
+            for (int i = 0; i < length - 1; i++) {
+                int ithItem = basket[i];
+                for (int j = i + 1; j < length; j++) {
+                    int jthItem = basket[j];
+                    if (isCandidate(ithItem, jthItem, 0, from)) {
+                        for (int t = from; t < to; t++) {
+                            counts[t - from][bucketOf(t, itemOf[ithItem], itemOf[jthItem])]++;
                         }
                     }
                 }
@@ -105,33 +362,62 @@ public class PCY {
         }
     }
 
-    public static final class IntPair {
+    private static final class PairCounter implements BasketConsumer {
 
-        private int v1;
-        private int v2;
+        private final LongIntHashMap sums = new LongIntHashMap(1 << 16);
+        // Triangular counts, or null when the pairs are counted in sums.
+        private final int[] triangle;
+        private long eliminated;
 
-        private IntPair() {
+        private PairCounter(int triangleCells) {
+            this.triangle = triangleCells >= 0 ? new int[triangleCells] : null;
         }
 
         @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (!(o instanceof IntPair)) return false;
-            IntPair intPair = (IntPair) o;
-            return v1 == intPair.v1 && v2 == intPair.v2;
+        public void accept(int[] basket, int length) {
+            for (int i = 0; i < length - 1; i++) {
+                int ithItem = basket[i];
+                for (int j = i + 1; j < length; j++) {
+                    int jthItem = basket[j];
+                    if (isCandidate(ithItem, jthItem, 0, 1)) {
+                        if (!isCandidate(ithItem, jthItem, 1, tableSizes.length)) {
+                            eliminated++;
+                        } else if (triangle != null) {
+                            triangle[triangleCell(ithItem, jthItem)]++;
+                        } else {
+                            sums.increment(pairKey(ithItem, jthItem));
+                        }
+                    }
+                }
+            }
         }
+    }
 
-        @Override
-        public int hashCode() {
-            return Objects.hash(v1, v2);
+    private static final class CandidateCounter implements BasketConsumer {
+
+        private final LongIntHashMap candidates;
+        private final LongIntHashMap sums = new LongIntHashMap(1 << 16);
+
+        private CandidateCounter(LongIntHashMap candidates) {
+            this.candidates = candidates;
         }
 
-        public static IntPair of(int v1, int v2) {
-            IntPair pair = new IntPair();
-            pair.v1 = v1;
-            pair.v2 = v2;
-            return pair;
+        @Override
+        public void accept(int[] basket, int length) {
+            for (int i = 0; i < length - 1; i++) {
+                int ithItem = basket[i];
+                for (int j = i + 1; j < length; j++) {
+                    long key = pairKey(ithItem, basket[j]);
+                    if (candidates.get(key) != 0) {
+                        sums.increment(key);
+                    }
+                }
+            }
         }
     }
 
+    private static long pairKey(int i, int j) {
+        return ((long) i << Integer.SIZE) | (j & 0xFFFFFFFFL);
+    }
+
 }
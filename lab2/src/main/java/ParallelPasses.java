@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Runs one pass over a basket source on several threads.
+// The calling thread reads the source and packs baskets into chunks, workers consume the chunks
+// into their own thread-local state, and the caller merges the returned workers afterwards.
+// With a single thread the worker simply consumes the source on the calling thread.
+public final class ParallelPasses {
+
+    // Items packed into one chunk before it is handed to a worker.
+    private static final int CHUNK_ITEMS = 1 << 16;
+
+    private ParallelPasses() {
+    }
+
+    public static <W extends BasketConsumer> List<W> run(BasketSource source, int threads, Supplier<W> workers)
+            throws IOException {
+        List<W> result = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            result.add(workers.get());
+        }
+        if (threads == 1) {
+            source.forEach(result.get(0));
+            return result;
+        }
+        // Two chunks in flight per worker, recycled through the free queue.
+        BlockingQueue<Chunk> full = new ArrayBlockingQueue<>(2 * threads + threads);
+        BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(2 * threads);
+        for (int i = 0; i < 2 * threads; i++) {
+            free.add(new Chunk());
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>(threads);
+        try {
+            for (W worker : result) {
+                futures.add(pool.submit(() -> {
+                    Chunk chunk;
+                    while ((chunk = full.take()) != Chunk.END) {
+                        chunk.feed(worker);
+                        free.put(chunk);
+                    }
+                    return null;
+                }));
+            }
+            Chunk[] current = {free.take()};
+            source.forEach((items, length) -> {
+                if (!current[0].fits(length)) {
+                    try {
+                        full.put(current[0]);
+                        current[0] = takeFree(free, futures);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Pass was interrupted!", e);
+                    }
+                }
+                current[0].add(items, length);
+            });
+            full.put(current[0]);
+            for (int t = 0; t < threads; t++) {
+                full.put(Chunk.END);
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Pass was interrupted!", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Pass failed!", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return result;
+    }
+
+    // Waits for a free chunk, failing fast if a worker died instead of blocking forever.
+    private static Chunk takeFree(BlockingQueue<Chunk> free, List<Future<?>> futures) throws InterruptedException {
+        Chunk chunk;
+        while ((chunk = free.poll(100, TimeUnit.MILLISECONDS)) == null) {
+            for (Future<?> future : futures) {
+                if (future.isDone()) {
+                    throw new IllegalStateException("A PCY worker stopped unexpectedly!");
+                }
+            }
+        }
+        return chunk;
+    }
+
+    // Baskets stored back to back: basket b is items[offsets[b] .. offsets[b + 1]).
+    private static final class Chunk {
+
+        private static final Chunk END = new Chunk();
+
+        private int[] items = new int[CHUNK_ITEMS];
+        private int[] offsets = new int[1024];
+        private int count;
+
+        private boolean fits(int length) {
+            return count == 0 || offsets[count] + length <= items.length;
+        }
+
+        private void add(int[] basket, int length) {
+            int start = offsets[count];
+            if (start + length > items.length) {
+                // A single basket larger than a chunk.
+                items = Arrays.copyOf(items, start + length);
+            }
+            System.arraycopy(basket, 0, items, start, length);
+            if (count + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[++count] = start + length;
+        }
+
+        private void feed(BasketConsumer consumer) {
+            int[] basket = new int[0];
+            for (int b = 0; b < count; b++) {
+                int length = offsets[b + 1] - offsets[b];
+                if (basket.length < length) {
+                    basket = new int[Math.max(length, 2 * basket.length)];
+                }
+                System.arraycopy(items, offsets[b], basket, 0, length);
+                consumer.accept(basket, length);
+            }
+            count = 0;
+        }
+
+    }
+
+}
@@ -0,0 +1,20 @@
+import java.util.Locale;
+
+// Prints the wall-clock runtime of the program to stderr when the JVM exits.
+public final class RuntimeReport {
+
+    private RuntimeReport() {
+    }
+
+    public static void install() {
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            final long start = System.nanoTime();
+
+            @Override
+            public void run() {
+                System.err.printf(Locale.US, "Runtime: %.6fs%n", (System.nanoTime() - start) * 1e-9);
+            }
+        }));
+    }
+
+}
@@ -0,0 +1,87 @@
+import hr.fer.zemris.avsp.bench.CFPipeline;
+import hr.fer.zemris.avsp.bench.Ratings;
+
+// Binds the benchmark stages to the default-package lab classes.
+public class CFPipelineImpl implements CFPipeline {
+
+    private SparseMatrix matrix;
+    private SparseMatrix transpose;
+    private int[][] queries;
+    private boolean floatValues;
+    private int top;
+    private int threads;
+    private SimilarityEngine engine;
+    private NeighbourIndex neighbours;
+
+    @Override
+    public void load(Ratings ratings, boolean floatValues, int top, int threads) {
+        SparseMatrix.Builder builder = new SparseMatrix.Builder(ratings.cols);
+        for (int i = 0; i < ratings.rows; i++) {
+            for (int e = 0; e < ratings.columns[i].length; e++) {
+                builder.add(ratings.columns[i][e], ratings.values[i][e]);
+            }
+            builder.endRow();
+        }
+        this.matrix = builder.build();
+        this.transpose = matrix.transpose();
+        this.queries = ratings.queries;
+        this.floatValues = floatValues;
+        this.top = top;
+        this.threads = threads;
+        this.engine = new SimilarityEngine(matrix, transpose, floatValues);
+        this.neighbours = engine.neighbours(top, threads);
+    }
+
+    @Override
+    public long engine() {
+        SimilarityEngine built = new SimilarityEngine(matrix, transpose, floatValues);
+        return Double.doubleToLongBits(built.norm(built.rows() - 1));
+    }
+
+    @Override
+    public long neighbours() {
+        return engine.neighbours(top, threads).size();
+    }
+
+    @Override
+    public long queries() {
+        double sum = 0.0;
+        for (int[] query : queries) {
+            double score = CF.recommendScore(matrix, neighbours, query[0], query[1], query[2]);
+            if (!Double.isNaN(score)) sum += score;
+        }
+        return Double.doubleToLongBits(sum);
+    }
+
+    @Override
+    public int[] neighbourPairs() {
+        int[] pairs = new int[2 * neighbours.size()];
+        for (int i = 0; i < neighbours.rows(); i++) {
+            for (int e = neighbours.start(i); e < neighbours.end(i); e++) {
+                pairs[2 * e] = i;
+                pairs[2 * e + 1] = neighbours.neighbour(e);
+            }
+        }
+        return pairs;
+    }
+
+    @Override
+    public double[] similarities(int[] pairs) {
+        double[] result = new double[pairs.length / 2];
+        for (int p = 0; p < result.length; p++) {
+            result[p] = engine.similarity(pairs[2 * p], pairs[2 * p + 1]);
+        }
+        return result;
+    }
+
+    @Override
+    public double[] scores() {
+        double[] result = new double[queries.length];
+        for (int q = 0; q < queries.length; q++) {
+            int[] query = queries[q];
+            result[q] = CF.recommendScore(matrix, neighbours, query[0], query[1], query[2]);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,74 @@
+import java.util.Locale;
+import java.util.Random;
+
+// Equivalence check of DecimalWriter against String.format(Locale.US, "%.<d>f") on random values:
+// rating-like scores, exact ties in the last decimal, values one ulp away from ties, large magnitudes
+// up to 1e17 around the BigDecimal fallback, and the special values. Prints the first mismatches and
+// their number, and exits with status 1 if there are any.
+// It lives with the benchmarks, in the default package next to the lab classes it checks:
+//   mvn -B package && java -cp target/benchmarks.jar DecimalWriterCheck [--values N] [--seed S]
+public class DecimalWriterCheck {
+
+    private static final int[] DECIMALS = {0, 1, 3, 6, 9};
+    private static final int MAX_PRINTED = 10;
+    private static final double[] SPECIAL = {
+            0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.MIN_VALUE,
+            Double.MAX_VALUE, 1.0005, 2.0005, 0.0005, -0.0005, -0.0004, 0.9995, 4.9995, 2.5, -2.5,
+            6.74032731635E7, 123456789.1235, 4.99949999999
+    };
+
+    private static int printed;
+
+    public static void main(String[] args) {
+        Options options = Options.parse(args);
+        int values = options.getInt("values", 1_000_000);
+        Random random = new Random(Long.parseLong(options.get("seed", "42")));
+        long checked = 0;
+        long mismatches = 0;
+        for (double value : SPECIAL) {
+            mismatches += check(value);
+            checked += DECIMALS.length;
+        }
+        for (int i = 0; i < values; i++) {
+            double sign = random.nextBoolean() ? 1 : -1;
+            // Scores of 1..5 ratings.
+            mismatches += check(sign * (1 + 4 * random.nextDouble()));
+            // Decimal ties at 3 decimals with up to 14 integer digits, and their neighbouring doubles.
+            long digits = (long) Math.pow(10, 3 + random.nextInt(15));
+            double tie = sign * (Math.floorMod(random.nextLong(), digits) + 0.5) / 1000;
+            mismatches += check(tie);
+            mismatches += check(Math.nextUp(tie));
+            mismatches += check(Math.nextDown(tie));
+            // Magnitudes from 1e-3 to 1e17, across the scaled bound of the fast path.
+            double large = sign * Math.pow(10, 20 * random.nextDouble() - 3);
+            mismatches += check(large);
+            // Few decimal digits at a large magnitude.
+            mismatches += check(sign * Math.round(random.nextDouble() * 1e11) / 1e3);
+            checked += 6L * DECIMALS.length;
+        }
+        System.out.printf(Locale.US, "%d mismatches in %d formatted values%n", mismatches, checked);
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    // Number of decimal counts for which the writer and the formatter disagree on value.
+    private static int check(double value) {
+        int mismatches = 0;
+        StringBuilder sb = new StringBuilder();
+        for (int decimals : DECIMALS) {
+            String expected = String.format(Locale.US, "%." + decimals + "f", value);
+            sb.setLength(0);
+            String actual = DecimalWriter.append(sb, value, decimals).toString();
+            if (!expected.equals(actual)) {
+                if (printed++ < MAX_PRINTED) {
+                    System.out.println(value + " with " + decimals + " decimals: expected " + expected
+                            + ", got " + actual);
+                }
+                mismatches++;
+            }
+        }
+        return mismatches;
+    }
+
+}
@@ -0,0 +1,41 @@
+package hr.fer.zemris.avsp.bench;
+
+// Stages of the lab3 item-item CF, as seen by the benchmarks.
+// The lab classes live in the default package and cannot be referenced from here,
+// so the implementation is a default-package class loaded by name.
+public interface CFPipeline {
+
+    String IMPLEMENTATION = "CFPipelineImpl";
+
+    static CFPipeline create() {
+        try {
+            return (CFPipeline) Class.forName(IMPLEMENTATION).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load " + IMPLEMENTATION + "!", e);
+        }
+    }
+
+    // Builds the utility matrix, the similarity engine in the given precision and its neighbour index.
+    void load(Ratings ratings, boolean floatValues, int top, int threads);
+
+    // Every stage below returns a checksum of its work, to be consumed by the benchmark.
+
+    // Centres the rows and computes their norms.
+    long engine();
+
+    long neighbours();
+
+    long queries();
+
+    // Results of the loaded pipeline, for comparing precisions.
+
+    // Neighbour pairs (i, j) of the loaded index, flattened.
+    int[] neighbourPairs();
+
+    // Similarity of every (i, j) pair, computed by the loaded engine.
+    double[] similarities(int[] pairs);
+
+    // Score of every query, in query order.
+    double[] scores();
+
+}
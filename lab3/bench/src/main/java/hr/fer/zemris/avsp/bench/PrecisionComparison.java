@@ -0,0 +1,53 @@
+package hr.fer.zemris.avsp.bench;
+
+import java.util.Locale;
+
+// Compares the float similarity engine with the double one on a generated matrix: the largest similarity
+// difference over the pairs of the double index, the largest score difference, and the number of scores
+// that differ when printed with 3 decimals (including a score that is NaN in only one precision).
+//
+// Usage: PrecisionComparison [rows] [cols] [density] [queries] [top]
+public class PrecisionComparison {
+
+    private static final int MAX_K = 10;
+    private static final long SEED = 42;
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int cols = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        double density = args.length > 2 ? Double.parseDouble(args[2]) : 0.01;
+        int queries = args.length > 3 ? Integer.parseInt(args[3]) : 100_000;
+        int top = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Ratings ratings = Ratings.generate(rows, cols, density, queries, MAX_K, SEED);
+        CFPipeline exact = CFPipeline.create();
+        exact.load(ratings, false, top, threads);
+        CFPipeline approximate = CFPipeline.create();
+        approximate.load(ratings, true, top, threads);
+        int[] pairs = exact.neighbourPairs();
+        double[] exactSimilarities = exact.similarities(pairs);
+        double[] approximateSimilarities = approximate.similarities(pairs);
+        double maxSimilarityDiff = 0;
+        for (int p = 0; p < exactSimilarities.length; p++) {
+            maxSimilarityDiff = Math.max(maxSimilarityDiff,
+                    Math.abs(exactSimilarities[p] - approximateSimilarities[p]));
+        }
+        double[] exactScores = exact.scores();
+        double[] approximateScores = approximate.scores();
+        double maxScoreDiff = 0;
+        int differentAtThreeDecimals = 0;
+        for (int q = 0; q < queries; q++) {
+            if (!Double.isNaN(exactScores[q]) && !Double.isNaN(approximateScores[q])) {
+                maxScoreDiff = Math.max(maxScoreDiff, Math.abs(exactScores[q] - approximateScores[q]));
+            }
+            if (!String.format(Locale.US, "%.3f", exactScores[q])
+                    .equals(String.format(Locale.US, "%.3f", approximateScores[q]))) {
+                differentAtThreeDecimals++;
+            }
+        }
+        System.out.printf(Locale.US, "%d neighbour pairs, float vs double: max similarity diff %.3e, "
+                        + "max score diff %.3e, %d of %d scores differ at 3 decimals%n",
+                pairs.length / 2, maxSimilarityDiff, maxScoreDiff, differentAtThreeDecimals, queries);
+    }
+
+}
@@ -0,0 +1,50 @@
+package hr.fer.zemris.avsp.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Generated CF input: a sparse rows x cols utility matrix of integer ratings 1..5, each cell rated
+// with the given density, plus (row, column, k) queries.
+public final class Ratings {
+
+    public final int rows;
+    public final int cols;
+    // Rated columns of every row, increasing, with their ratings.
+    public final int[][] columns;
+    public final double[][] values;
+    public final int[][] queries;
+
+    private Ratings(int rows, int cols, int[][] columns, double[][] values, int[][] queries) {
+        this.rows = rows;
+        this.cols = cols;
+        this.columns = columns;
+        this.values = values;
+        this.queries = queries;
+    }
+
+    public static Ratings generate(int rows, int cols, double density, int queries, int maxK, long seed) {
+        Random random = new Random(seed);
+        int[][] columns = new int[rows][];
+        double[][] values = new double[rows][];
+        int[] rowColumns = new int[cols];
+        for (int i = 0; i < rows; i++) {
+            int n = 0;
+            for (int j = 0; j < cols; j++) {
+                if (random.nextDouble() < density) {
+                    rowColumns[n++] = j;
+                }
+            }
+            columns[i] = Arrays.copyOf(rowColumns, n);
+            values[i] = new double[n];
+            for (int e = 0; e < n; e++) {
+                values[i][e] = 1 + random.nextInt(5);
+            }
+        }
+        int[][] qs = new int[queries][];
+        for (int q = 0; q < queries; q++) {
+            qs[q] = new int[]{random.nextInt(rows), random.nextInt(cols), 1 + random.nextInt(maxK)};
+        }
+        return new Ratings(rows, cols, columns, values, qs);
+    }
+
+}
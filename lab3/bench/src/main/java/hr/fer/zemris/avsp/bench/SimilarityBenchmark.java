@@ -0,0 +1,81 @@
+package hr.fer.zemris.avsp.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Stage benchmarks of the CF similarity engine in double and in float precision on a generated matrix.
+//
+//   mvn -B package && java -jar target/benchmarks.jar SimilarityBenchmark -rf csv -rff results.csv
+//   java -cp target/benchmarks.jar hr.fer.zemris.avsp.bench.PrecisionComparison
+//
+// The second command reports how far the float results are from the double ones.
+// Matrix shape is set with JMH parameters, e.g. -p rows=50000 -p cols=20000 -p density=0.002 -p top=50.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimilarityBenchmark {
+
+    private static final int MAX_K = 10;
+    private static final long SEED = 42;
+
+    @Param("5000")
+    private int rows;
+
+    @Param("20000")
+    private int cols;
+
+    @Param("0.01")
+    private double density;
+
+    @Param("100000")
+    private int queries;
+
+    @Param({"double", "float"})
+    private String precision;
+
+    @Param("0")
+    private int top;
+
+    @Param("1")
+    private int threads;
+
+    private CFPipeline pipeline;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Ratings ratings = Ratings.generate(rows, cols, density, queries, MAX_K, SEED);
+        pipeline = CFPipeline.create();
+        pipeline.load(ratings, precision.equals("float"), top, threads);
+    }
+
+    @Benchmark
+    public long engine() {
+        return pipeline.engine();
+    }
+
+    @Benchmark
+    public long neighbours() {
+        return pipeline.neighbours();
+    }
+
+    @Benchmark
+    public long queries() {
+        return pipeline.queries();
+    }
+
+}
@@ -1,10 +1,10 @@
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Locale;
-import java.util.Map;
-import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class CF {
 
@@ -24,12 +24,23 @@ public class CF {
     private static final int QUERY_LENGTH = 4;
     private static final StringBuilder RESULTS = new StringBuilder();
     private static final String LINE_SEP = System.lineSeparator();
-    private static final Map<IntPair, Double> I_SIMILARITIES = new HashMap<>();
-    private static final Map<IntPair, Double> U_SIMILARITIES = new HashMap<>();
 
-    private static double[][] itemsUsersM;
-    private static double[][] usersItemsM;
+    // Ratings stored sparsely, missing ratings have no entry; usersItemsM is the transpose of itemsUsersM.
+    private static SparseMatrix itemsUsersM;
+    private static SparseMatrix usersItemsM;
+    // Positive similarities (other than exactly 1) of every item and of every user, best first.
+    private static NeighbourIndex itemNeighbours;
+    private static NeighbourIndex userNeighbours;
     private static int[][] queries;
+    // Rating of an update line (item, user, rating) among the queries, NaN for a query.
+    private static double[] updates;
+    // Live similarities with --engine incremental, null otherwise.
+    private static IncrementalCF incremental;
+    // Rows computed on demand with --engine lazy, null otherwise.
+    private static LazySimilarities itemRows;
+    private static LazySimilarities userRows;
+    // Whether the similarity engines keep the centred ratings as floats.
+    private static boolean floatValues;
 
     private enum CFMode {
         ITEM_ITEM(0),
@@ -49,46 +60,73 @@ public class CF {
         }
     }
 
-    public static final class IntPair {
-
-        private int v1;
-        private int v2;
-
-        private IntPair() {
+    // Usage: CF [--engine eager|incremental|lazy|lsh] [--top M] [--threads T] [--precision double|float]
+    //           [--queries sequential|batched] < input
+    // With M > 0 only the M most similar neighbours of every row are kept, which bounds the index
+    // but leaves a query with fewer than k rated neighbours when the top M have not rated its column.
+    // Similarities are computed on T threads (T <= 0 uses every available core) with the same result.
+    // --engine incremental keeps similarity statistics up to date instead: a query line "item user rating"
+    // adds or changes a rating and the following queries see it, without recomputing all similarities.
+    // --engine lazy computes the similarities of a row only when a query first needs it, and caches
+    // rows with up to E neighbour entries per orientation (--cache-entries, default 2^24) in LRU order.
+    // --engine lsh only evaluates pairs of rows whose random-hyperplane signatures share one of B bands
+    // of R bits (--bands, default 16, --band-rows, default 4, --seed), and reports on stderr the recall
+    // against the exact neighbours of N sampled rows (--recall-sample, default 100); scores are approximate.
+    // --precision float keeps the centred ratings only as floats for the eager, lazy and lsh engines,
+    // which halves the value bytes the similarity loops read and the engine holds;
+    // scores may differ slightly from the default double.
+    // --queries batched groups the queries by mode and target row, fetches every neighbour list once
+    // and answers the groups on T threads; the results keep the input order.
+    public static void main(String[] args) throws IOException {
+        Options options = Options.parse(args);
+        int top = options.getInt("top", 0);
+        int threads = options.getInt("threads", 1);
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
         }
-
-        @Override
-        public String toString() {
-            return "(%d, %d)".formatted(v1, v2);
+        String engine = options.get("engine", "eager");
+        String precision = options.get("precision", "double");
+        if (!precision.equals("double") && !precision.equals("float")) {
+            throw new IllegalArgumentException("Unknown precision " + precision + "!");
         }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (!(o instanceof IntPair)) return false;
-            IntPair intPair = (IntPair) o;
-            return v1 == intPair.v1 && v2 == intPair.v2;
+        floatValues = precision.equals("float");
+        parseInput();
+        switch (engine) {
+            case "eager" -> {
+                itemNeighbours = calculateSimilarities(itemsUsersM, usersItemsM, top, threads);
+                userNeighbours = calculateSimilarities(usersItemsM, itemsUsersM, top, threads);
+            }
+            case "incremental" -> incremental = new IncrementalCF(itemsUsersM, usersItemsM);
+            case "lazy" -> {
+                long cacheEntries = Long.parseLong(options.get("cache-entries", String.valueOf(1 << 24)));
+                itemRows = new LazySimilarities(
+                        new SimilarityEngine(itemsUsersM, usersItemsM, floatValues), top, cacheEntries);
+                userRows = new LazySimilarities(
+                        new SimilarityEngine(usersItemsM, itemsUsersM, floatValues), top, cacheEntries);
+            }
+            case "lsh" -> {
+                int bands = options.getInt("bands", 16);
+                int bandRows = options.getInt("band-rows", 4);
+                long seed = Long.parseLong(options.get("seed", "42"));
+                int sample = options.getInt("recall-sample", 100);
+                itemNeighbours = approximateSimilarities("Items", itemsUsersM, usersItemsM, top, threads,
+                        bands, bandRows, seed, sample);
+                userNeighbours = approximateSimilarities("Users", usersItemsM, itemsUsersM, top, threads,
+                        bands, bandRows, seed, sample);
+            }
+            default -> throw new IllegalArgumentException("Unknown engine " + engine + "!");
         }
-
-        @Override
-        public int hashCode() {
-            return Objects.hash(v1, v2);
+        String queriesMode = options.get("queries", "sequential");
+        switch (queriesMode) {
+            case "sequential" -> processQueries();
+            case "batched" -> processQueriesBatched(threads);
+            default -> throw new IllegalArgumentException("Unknown queries mode " + queriesMode + "!");
         }
-
-        public static IntPair of(int v1, int v2) {
-            IntPair pair = new IntPair();
-            pair.v1 = v1;
-            pair.v2 = v2;
-            return pair;
-        }
-    }
-
-    public static void main(String[] args) throws IOException {
-        parseInput();
-        calculateSimilarities(itemsUsersM, I_SIMILARITIES);
-        calculateSimilarities(usersItemsM, U_SIMILARITIES);
-        processQueries();
         System.out.println(RESULTS);
+        if (itemRows != null) {
+            System.err.println("Items " + itemRows.stats());
+            System.err.println("Users " + userRows.stats());
+        }
     }
 
     private static void parseInput() throws IOException {
@@ -98,121 +136,191 @@ public class CF {
             int nItems = Integer.parseInt(parts[0]);
             int nUsers = Integer.parseInt(parts[1]);
             // Read the utility matrix.
-            itemsUsersM = new double[nItems][nUsers];
-            usersItemsM = new double[nUsers][nItems];
+            SparseMatrix.Builder builder = new SparseMatrix.Builder(nUsers);
             for (int i = 0; i < nItems; i++) {
                 parts = br.readLine().strip().split(SPLIT_DEL);
                 for (int j = 0; j < nUsers; j++) {
                     String s = parts[j];
-                    double val = s.equals(NO_RATING) ? 0.0 : Double.parseDouble(s);
-                    itemsUsersM[i][j] = val;
-                    usersItemsM[j][i] = val;
+                    if (!s.equals(NO_RATING)) {
+                        builder.add(j, Double.parseDouble(s));
+                    }
                 }
+                builder.endRow();
             }
+            itemsUsersM = builder.build();
+            usersItemsM = itemsUsersM.transpose();
             // Read the number of queries.
             int nQueries = Integer.parseInt(br.readLine().strip());
             // Read the queries.
             queries = new int[nQueries][QUERY_LENGTH];
+            updates = new double[nQueries];
             for (int i = 0; i < nQueries; i++) {
                 parts = br.readLine().strip().split(SPLIT_DEL);
+                if (parts.length == QUERY_LENGTH - 1) {
+                    // Rating update: item, user, rating.
+                    queries[i][0] = Integer.parseInt(parts[0]);
+                    queries[i][1] = Integer.parseInt(parts[1]);
+                    updates[i] = Double.parseDouble(parts[2]);
+                    continue;
+                }
                 for (int j = 0; j < QUERY_LENGTH; j++) {
                     queries[i][j] = Integer.parseInt(parts[j]);
                 }
+                updates[i] = Double.NaN;
             }
         }
     }
 
-    private static void calculateSimilarities(double[][] matrix, Map<IntPair, Double> similarities) {
-        int rows = matrix.length;
-        int cols = matrix[0].length;
-        // Calculate means in every row.
-        double[] meanRows = new double[rows];
-        for (int i = 0; i < rows; i++) {
-            int counter = 0;
-            double sum = 0;
-            for (double value : matrix[i]) {
-                if (value != 0) {
-                    sum += value;
-                    counter++;
+    private static NeighbourIndex calculateSimilarities(SparseMatrix matrix, SparseMatrix transpose, int top,
+                                                        int threads) {
+        return new SimilarityEngine(matrix, transpose, floatValues).neighbours(top, threads);
+    }
+
+    private static NeighbourIndex approximateSimilarities(String name, SparseMatrix matrix, SparseMatrix transpose,
+                                                          int top, int threads, int bands, int bandRows,
+                                                          long seed, int sample) {
+        SimilarityEngine similarityEngine = new SimilarityEngine(matrix, transpose, floatValues);
+        HyperplaneLsh lsh = new HyperplaneLsh(similarityEngine, bands, bandRows, seed);
+        NeighbourIndex neighbours = lsh.neighbours(top, threads);
+        System.err.println(name + " " + lsh.recall(neighbours, top, sample, seed));
+        return neighbours;
+    }
+
+    private static void processQueries() {
+        for (int q = 0; q < queries.length; q++) {
+            int[] query = queries[q];
+            int i = query[0] - 1;
+            int j = query[1] - 1;
+            if (!Double.isNaN(updates[q])) {
+                if (incremental == null) {
+                    throw new IllegalStateException("Rating updates need --engine incremental!");
                 }
+                incremental.rate(i, j, updates[q]);
+                continue;
             }
-            if (counter != 0) meanRows[i] = sum / counter;
-        }
-        // Normalize every row.
-        double[][] normalizedRows = new double[rows][cols];
-        for (int i = 0; i < rows; i++) {
-            normalizedRows[i] = subtract(matrix[i], meanRows[i]);
-        }
-        // Calculate similarities.
-        for (int i = 0; i < rows; i++) {
-            double[] v1 = normalizedRows[i];
-            for (int j = i; j < rows; j++) {
-                double[] v2 = normalizedRows[j];
-                double value = i == j ? 1 : cosine(v1, v2);
-                similarities.put(IntPair.of(i, j), value);
+            CFMode mode = CFMode.getValue(query[2]);
+            int k = query[3];
+            double score;
+            if (incremental != null) {
+                score = switch (mode) {
+                    case ITEM_ITEM -> incremental.itemItemScore(i, j, k);
+                    case USER_USER -> incremental.userUserScore(i, j, k);
+                };
+            } else if (itemRows != null) {
+                score = switch (mode) {
+                    case ITEM_ITEM -> recommendScore(itemsUsersM, itemRows.row(i), 0, j, k);
+                    case USER_USER -> recommendScore(usersItemsM, userRows.row(j), 0, i, k);
+                };
+            } else {
+                score = switch (mode) {
+                    case ITEM_ITEM -> recommendScore(itemsUsersM, itemNeighbours, i, j, k);
+                    case USER_USER -> recommendScore(usersItemsM, userNeighbours, j, i, k);
+                };
             }
+            DecimalWriter.append(RESULTS, score, 3).append(LINE_SEP);
         }
+        // No line at all when the input has no queries, or only rating updates.
+        RESULTS.setLength(Math.max(0, RESULTS.length() - LINE_SEP.length()));
     }
 
-    private static double[] subtract(double[] v, double r) {
-        double[] result = new double[v.length];
-        for (int i = 0; i < v.length; i++) {
-            if (v[i] != 0) {
-                result[i] = v[i] - r;
+    // Queries sorted by (mode, target row, position) form contiguous groups sharing one neighbour list.
+    // The keys pack mode into bit 62, the target row into bits 31..61 and the position into bits 0..30.
+    private static void processQueriesBatched(int threads) {
+        if (incremental != null) {
+            throw new IllegalStateException("Batched queries need --engine eager or lazy!");
+        }
+        long[] keys = new long[queries.length];
+        for (int q = 0; q < queries.length; q++) {
+            if (!Double.isNaN(updates[q])) {
+                throw new IllegalStateException("Rating updates need --engine incremental!");
+            }
+            int[] query = queries[q];
+            CFMode mode = CFMode.getValue(query[2]);
+            long target = mode == CFMode.ITEM_ITEM ? query[0] - 1 : query[1] - 1;
+            keys[q] = ((long) mode.key << 62) | (target << 31) | q;
+        }
+        Arrays.sort(keys);
+        // Group g holds the sorted queries groupStarts[g] .. groupStarts[g + 1] - 1.
+        int[] groupStarts = new int[keys.length + 1];
+        int numOfGroups = 0;
+        for (int g = 0; g < keys.length; g++) {
+            if (g == 0 || keys[g] >>> 31 != keys[g - 1] >>> 31) {
+                groupStarts[numOfGroups++] = g;
+            }
+        }
+        groupStarts[numOfGroups] = keys.length;
+        double[] scores = new double[queries.length];
+        if (numOfGroups > 0) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                pool.invoke(new QueryGroups(keys, groupStarts, 0, numOfGroups, scores));
+            } finally {
+                pool.shutdown();
             }
         }
-        return result;
+        for (double score : scores) {
+            DecimalWriter.append(RESULTS, score, 3).append(LINE_SEP);
+        }
+        RESULTS.setLength(Math.max(0, RESULTS.length() - LINE_SEP.length()));
     }
 
-    private static double cosine(double[] v1, double[] v2) {
-        assert v1.length == v2.length;
-        double nominator = 0.0;
-        double norm1 = 0.0;
-        double norm2 = 0.0;
-        for (int i = 0; i < v1.length; i++) {
-            double value1 = v1[i];
-            double value2 = v2[i];
-            nominator += value1 * value2;
-            norm1 += value1 * value1;
-            norm2 += value2 * value2;
-        }
-        double denominator = Math.sqrt(norm1) * Math.sqrt(norm2);
-        return nominator / denominator;
-    }
+    // Answers the query groups [from, to), splitting the range in halves down to single groups.
+    private static final class QueryGroups extends RecursiveAction {
 
-    private static void processQueries() {
-        for (int[] query : queries) {
-            int i = query[0] - 1;
-            int j = query[1] - 1;
-            CFMode mode = CFMode.getValue(query[2]);
-            int k = query[3];
-            double score = switch (mode) {
-                case ITEM_ITEM -> recommendScore(itemsUsersM, I_SIMILARITIES, i, j, k);
-                case USER_USER -> recommendScore(usersItemsM, U_SIMILARITIES, j, i, k);
-            };
-            RESULTS.append(String.format(Locale.US, "%.3f%n", score));
+        private final long[] keys;
+        private final int[] groupStarts;
+        private final int from;
+        private final int to;
+        private final double[] scores;
+
+        private QueryGroups(long[] keys, int[] groupStarts, int from, int to, double[] scores) {
+            this.keys = keys;
+            this.groupStarts = groupStarts;
+            this.from = from;
+            this.to = to;
+            this.scores = scores;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new QueryGroups(keys, groupStarts, from, mid, scores),
+                        new QueryGroups(keys, groupStarts, mid, to, scores));
+                return;
+            }
+            int start = groupStarts[from];
+            int end = groupStarts[from + 1];
+            CFMode mode = CFMode.getValue((int) (keys[start] >>> 62));
+            int target = (int) ((keys[start] >>> 31) & Integer.MAX_VALUE);
+            SparseMatrix matrix = mode == CFMode.ITEM_ITEM ? itemsUsersM : usersItemsM;
+            // The whole group needs the same row: fetch it once.
+            NeighbourIndex neighbours;
+            int row;
+            if (itemRows != null) {
+                neighbours = (mode == CFMode.ITEM_ITEM ? itemRows : userRows).compute(target);
+                row = 0;
+            } else {
+                neighbours = mode == CFMode.ITEM_ITEM ? itemNeighbours : userNeighbours;
+                row = target;
+            }
+            for (int g = start; g < end; g++) {
+                int q = (int) (keys[g] & Integer.MAX_VALUE);
+                int[] query = queries[q];
+                int column = mode == CFMode.ITEM_ITEM ? query[1] - 1 : query[0] - 1;
+                scores[q] = recommendScore(matrix, neighbours, row, column, query[3]);
+            }
         }
-        RESULTS.setLength(RESULTS.length() - LINE_SEP.length());
     }
 
-    @SuppressWarnings("unchecked")
-    private static double recommendScore(double[][] matrix, Map<IntPair, Double> similarities, int i, int j, int k) {
-        Map.Entry<IntPair, Double>[] similaritiesArray = similarities.entrySet().stream()
-                .filter(entry -> {
-                    IntPair key = entry.getKey();
-                    double value = entry.getValue();
-                    return (key.v1 == i || key.v2 == i) && value > 0 && value != 1;
-                })
-                .sorted(Map.Entry.<IntPair, Double>comparingByValue().reversed())
-                .toArray(Map.Entry[]::new);
+    // Walks the neighbours of row i from the most similar one until k of them have rated column j.
+    static double recommendScore(SparseMatrix matrix, NeighbourIndex neighbours, int i, int j, int k) {
         double nominator = 0.0;
         double denominator = 0.0;
-        for (Map.Entry<IntPair, Double> entry : similaritiesArray) {
-            IntPair key = entry.getKey();
-            int row = key.v1 == i ? key.v2 : key.v1;
-            double r = matrix[row][j];
+        for (int e = neighbours.start(i); e < neighbours.end(i); e++) {
+            double r = matrix.get(neighbours.neighbour(e), j);
             if (r != 0) {
-                double sim = entry.getValue();
+                double sim = neighbours.similarity(e);
                 nominator += r * sim;
                 denominator += sim;
                 k--;
@@ -0,0 +1,68 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Appends doubles with a fixed number of decimals exactly like String.format(Locale.US, "%.<d>f", value),
+// without going through a Formatter. The formatter rounds the shortest decimal form of the value
+// (the digits of Double.toString) HALF_UP, so 1.0005 becomes 1.001 although the double is slightly below.
+// Values whose scaled fraction lies too close to one half to decide in double arithmetic,
+// and values too large for a long, fall back to BigDecimal over those digits.
+public final class DecimalWriter {
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L
+    };
+    // Scaled fractions closer than this to one half are left to BigDecimal.
+    private static final double TIE_MARGIN = 1e-6;
+    // The scaled double is off the scaled shortest decimal form by about one ulp, and ulp(x) <= x * 2^-52,
+    // so below this bound (about 1.1e9) the error stays under a quarter of TIE_MARGIN and the fraction
+    // test cannot round the other way than the formatter; larger scaled values go to BigDecimal.
+    private static final double MAX_FAST = TIE_MARGIN / (4 * Math.ulp(1.0));
+
+    private DecimalWriter() {
+    }
+
+    public static StringBuilder append(StringBuilder sb, double value, int decimals) {
+        if (decimals < 0 || decimals >= POWERS_OF_TEN.length) {
+            throw new IllegalArgumentException("Unsupported number of decimals: " + decimals + "!");
+        }
+        if (Double.isNaN(value)) {
+            return sb.append("NaN");
+        }
+        if (Double.isInfinite(value)) {
+            return sb.append(value > 0 ? "Infinity" : "-Infinity");
+        }
+        long scale = POWERS_OF_TEN[decimals];
+        double scaled = Math.abs(value) * scale;
+        if (scaled >= MAX_FAST) {
+            return appendExact(sb, value, decimals);
+        }
+        double floor = Math.floor(scaled);
+        double fraction = scaled - floor;
+        if (Math.abs(fraction - 0.5) < TIE_MARGIN) {
+            return appendExact(sb, value, decimals);
+        }
+        long rounded = (long) floor + (fraction > 0.5 ? 1 : 0);
+        // The sign survives rounding to zero, as in the formatter ("-0.000").
+        if (value < 0 || (value == 0 && 1 / value < 0)) {
+            sb.append('-');
+        }
+        sb.append(rounded / scale);
+        if (decimals > 0) {
+            sb.append('.');
+            String digits = Long.toString(rounded % scale);
+            for (int pad = digits.length(); pad < decimals; pad++) {
+                sb.append('0');
+            }
+            sb.append(digits);
+        }
+        return sb;
+    }
+
+    private static StringBuilder appendExact(StringBuilder sb, double value, int decimals) {
+        if (value < 0 || (value == 0 && 1 / value < 0)) {
+            sb.append('-');
+        }
+        return sb.append(BigDecimal.valueOf(Math.abs(value)).setScale(decimals, RoundingMode.HALF_UP).toPlainString());
+    }
+
+}
@@ -0,0 +1,220 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Approximate neighbour index from random-hyperplane LSH over the mean-centred rows.
+//
+// Bit b of a row's signature is the sign of the row's dot product with hyperplane b, whose component
+// for column c is +1 or -1 from a hash of (seed, b, c), so no hyperplane is ever stored: this is
+// SimHash with the centred ratings as feature weights. Two rows agree on a bit with probability
+// 1 - angle / pi. As in lab1, the B * R signature bits are cut into B bands of R bits, rows sharing
+// the bits of some band become candidates, and only candidates get their exact similarity.
+// Rows with a zero norm never have a usable similarity and are left out of the buckets.
+public final class HyperplaneLsh {
+
+    private final SimilarityEngine engine;
+    private final int bands;
+    private final int rowsPerBand;
+    // Rows of every band ordered by band key; row i's bucket is bucketRows[b][bucketStart[b][i] .. bucketEnd[b][i]).
+    private final int[][] bucketRows;
+    private final int[][] bucketStart;
+    private final int[][] bucketEnd;
+    private long candidates;
+
+    public HyperplaneLsh(SimilarityEngine engine, int bands, int rowsPerBand, long seed) {
+        if (bands < 1 || rowsPerBand < 1 || rowsPerBand > Integer.SIZE) {
+            throw new IllegalArgumentException("Need B >= 1 bands of 1 <= R <= 32 rows, got B=" + bands
+                    + ", R=" + rowsPerBand + "!");
+        }
+        this.engine = engine;
+        this.bands = bands;
+        this.rowsPerBand = rowsPerBand;
+        int n = engine.rows();
+        int words = (bands * rowsPerBand + Long.SIZE - 1) / Long.SIZE;
+        long[] signatures = signatures(engine, bands * rowsPerBand, words, seed);
+        bucketRows = new int[bands][];
+        bucketStart = new int[bands][];
+        bucketEnd = new int[bands][];
+        for (int b = 0; b < bands; b++) {
+            long[] keys = new long[n];
+            int size = 0;
+            for (int i = 0; i < n; i++) {
+                if (engine.norm(i) == 0) continue;
+                long key = bits(signatures, i * words, b * rowsPerBand, rowsPerBand);
+                keys[size++] = (key << Integer.SIZE) | i;
+            }
+            keys = Arrays.copyOf(keys, size);
+            Arrays.sort(keys);
+            int[] rows = new int[size];
+            int[] start = new int[n];
+            int[] end = new int[n];
+            for (int p = 0; p < size; ) {
+                int q = p;
+                while (q < size && keys[q] >>> Integer.SIZE == keys[p] >>> Integer.SIZE) {
+                    rows[q] = (int) keys[q];
+                    q++;
+                }
+                for (int r = p; r < q; r++) {
+                    start[rows[r]] = p;
+                    end[rows[r]] = q;
+                }
+                p = q;
+            }
+            bucketRows[b] = rows;
+            bucketStart[b] = start;
+            bucketEnd[b] = end;
+        }
+    }
+
+    // Index of the usable similarities among the candidate pairs.
+    public NeighbourIndex neighbours(int top, int threads) {
+        NeighbourIndex.Builder similarities = new NeighbourIndex.Builder(engine.rows(), top);
+        candidates = 0;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            // One stamp array per worker thread for this call; rows stamp with i + 1, so blocks can share it.
+            ThreadLocal<int[]> stamps = ThreadLocal.withInitial(() -> new int[engine.rows()]);
+            pool.invoke(new Rows(0, engine.rows(), similarities, stamps));
+        } finally {
+            pool.shutdown();
+        }
+        return similarities.build();
+    }
+
+    // Share of the exact neighbours (with the same top) of sampled rows that the approximate index found.
+    public String recall(NeighbourIndex approximate, int top, int sample, long seed) {
+        int n = engine.rows();
+        List<Integer> rows = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            rows.add(i);
+        }
+        Collections.shuffle(rows, new Random(seed));
+        long found = 0;
+        long expected = 0;
+        boolean[] isApproximate = new boolean[n];
+        for (int i : rows.subList(0, Math.min(sample, n))) {
+            for (int e = approximate.start(i); e < approximate.end(i); e++) {
+                isApproximate[approximate.neighbour(e)] = true;
+            }
+            NeighbourIndex exact = engine.row(i, top);
+            for (int e = 0; e < exact.size(); e++) {
+                if (isApproximate[exact.neighbour(e)]) found++;
+            }
+            expected += exact.size();
+            for (int e = approximate.start(i); e < approximate.end(i); e++) {
+                isApproximate[approximate.neighbour(e)] = false;
+            }
+        }
+        double pairs = (double) n * (n - 1) / 2;
+        return String.format(Locale.US, "LSH: bands=%d, rows=%d, candidates=%d of %.0f pairs (%.2f%%), "
+                        + "recall=%.4f over %d neighbours of %d sampled rows",
+                bands, rowsPerBand, candidates, pairs, pairs == 0 ? 0.0 : 100.0 * candidates / pairs,
+                expected == 0 ? 1.0 : (double) found / expected, expected, Math.min(sample, n));
+    }
+
+    // Exact similarities of row i with its later candidates, deduplicated across bands with the stamps.
+    private long candidatesOf(int i, int[] stamps, NeighbourIndex.Builder similarities) {
+        long counter = 0;
+        for (int b = 0; b < bands; b++) {
+            if (bucketEnd[b][i] == 0) continue;
+            for (int p = bucketStart[b][i]; p < bucketEnd[b][i]; p++) {
+                int j = bucketRows[b][p];
+                if (j <= i || stamps[j] == i + 1) continue;
+                stamps[j] = i + 1;
+                counter++;
+                double value = engine.similarity(i, j);
+                if (value > 0 && value != 1) {
+                    similarities.add(i, j, value);
+                }
+            }
+        }
+        return counter;
+    }
+
+    // Signatures of the centred rows, in the precision the engine keeps them.
+    private static long[] signatures(SimilarityEngine engine, int bits, int words, long seed) {
+        long[] signatures = new long[engine.rows() * words];
+        double[] sums = new double[bits];
+        for (int i = 0; i < engine.rows(); i++) {
+            Arrays.fill(sums, 0.0);
+            for (int e = engine.rowStart(i); e < engine.rowEnd(i); e++) {
+                int col = engine.column(e);
+                double value = engine.value(e);
+                for (int b = 0; b < bits; b += Long.SIZE) {
+                    // 64 hyperplane signs of this column at once.
+                    long signs = mix(seed + (b / Long.SIZE) * 0x9E3779B97F4A7C15L + col * 0xC2B2AE3D27D4EB4FL);
+                    for (int t = 0; t < Long.SIZE && b + t < bits; t++) {
+                        sums[b + t] += (signs >>> t & 1) != 0 ? value : -value;
+                    }
+                }
+            }
+            for (int b = 0; b < bits; b++) {
+                if (sums[b] >= 0) {
+                    signatures[i * words + b / Long.SIZE] |= 1L << b;
+                }
+            }
+        }
+        return signatures;
+    }
+
+    // Bits [start, start + length) of the signature at offset, length <= 32.
+    private static long bits(long[] signatures, int offset, int start, int length) {
+        long word = signatures[offset + start / Long.SIZE] >>> (start % Long.SIZE);
+        int available = Long.SIZE - start % Long.SIZE;
+        if (available < length) {
+            word |= signatures[offset + start / Long.SIZE + 1] << available;
+        }
+        return word & ((1L << length) - 1);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // Splits the row range in halves down to blocks of at most 256 rows.
+    // A block's pairs are merged into the shared builder as described at NeighbourIndex.Builder.
+    private final class Rows extends RecursiveAction {
+
+        private final int from;
+        private final int to;
+        private final NeighbourIndex.Builder similarities;
+        private final ThreadLocal<int[]> stamps;
+
+        private Rows(int from, int to, NeighbourIndex.Builder similarities, ThreadLocal<int[]> stamps) {
+            this.from = from;
+            this.to = to;
+            this.similarities = similarities;
+            this.stamps = stamps;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 256) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Rows(from, mid, similarities, stamps), new Rows(mid, to, similarities, stamps));
+                return;
+            }
+            int[] rowStamps = stamps.get();
+            NeighbourIndex.Builder part = new NeighbourIndex.Builder(engine.rows(), 0);
+            long counter = 0;
+            for (int i = from; i < to; i++) {
+                counter += candidatesOf(i, rowStamps, part);
+            }
+            synchronized (similarities) {
+                similarities.addAll(part);
+                candidates += counter;
+            }
+        }
+    }
+
+}
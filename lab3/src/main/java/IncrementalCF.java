@@ -0,0 +1,284 @@
+import java.util.Arrays;
+
+// Item-item and user-user similarities that follow rating updates without a full recompute.
+//
+// Every pair of rows sharing a column keeps sums over their common columns (S_xy, S_x, S_y, n)
+// and every row its mean mu and centred sum of squares Q, so the centred cosine of rows x and y follows as
+//   (S_xy - mu_y S_x - mu_x S_y + n mu_x mu_y) / (sqrt(Q_x) sqrt(Q_y)).
+// A new or changed rating (item, user) updates the pairs of the item with the other items rated by the user,
+// the pairs of the user with the other users who rated the item, and the statistics of both rows.
+// Neighbour lists of the affected rows are marked dirty and re-sorted when a query next needs them.
+// Scores agree with the batch path up to floating point rounding of the sums.
+//
+// Ratings are read from the parsed matrix, with changed and new ratings in an overlay keyed by (row, column);
+// pair sums live in parallel arrays indexed through a long-keyed map of the pair (x, y), x < y.
+public final class IncrementalCF {
+
+    private final Side items;
+    private final Side users;
+
+    // usersItems must be itemsUsers.transpose().
+    public IncrementalCF(SparseMatrix itemsUsers, SparseMatrix usersItems) {
+        items = new Side(itemsUsers, usersItems);
+        users = new Side(usersItems, itemsUsers);
+    }
+
+    // Adds or changes the rating of item by user (0-based).
+    public void rate(int item, int user, double value) {
+        if (value == 0 || Double.isNaN(value)) {
+            throw new IllegalArgumentException("Rating must be non-zero, got " + value + "!");
+        }
+        double old = items.rating(item, user);
+        items.update(item, user, value, old, users);
+        users.update(user, item, value, old, items);
+    }
+
+    public double itemItemScore(int item, int user, int k) {
+        return items.score(item, user, k);
+    }
+
+    public double userUserScore(int item, int user, int k) {
+        return users.score(user, item, k);
+    }
+
+    private static long key(int x, int y) {
+        return ((long) x << Integer.SIZE) | (y & 0xFFFFFFFFL);
+    }
+
+    // Appends value to list, which holds size values, and returns the (possibly grown) list.
+    private static int[] append(int[] list, int size, int value) {
+        if (list == null) {
+            list = new int[4];
+        } else if (size == list.length) {
+            list = Arrays.copyOf(list, 2 * size);
+        }
+        list[size] = value;
+        return list;
+    }
+
+    // One orientation of the utility matrix: rows are items or users.
+    private static final class Side {
+
+        private final SparseMatrix matrix;
+        // Ratings that differ from matrix, keyed by (row, column); overlayValues is indexed like the map.
+        private final LongIndexMap overlay = new LongIndexMap(16);
+        private double[] overlayValues = new double[16];
+        // Columns every row rated after the matrix was parsed.
+        private final int[][] addedColumns;
+        private final int[] numOfAddedColumns;
+        private final int[] counts;
+        private final double[] means;
+        private final double[] sumsOfSquares;
+        // Common sums of pair (x, y), x < y, indexed like the pairs map.
+        private final LongIndexMap pairs;
+        private double[] sxy;
+        private double[] sx;
+        private double[] sy;
+        private int[] n;
+        // Pairs of every row.
+        private final int[][] rowPairs;
+        private final int[] numOfRowPairs;
+        private final boolean[] dirty;
+        private final int[][] neighbourIds;
+        private final double[][] neighbourSims;
+
+        // cols is the transpose of matrix.
+        private Side(SparseMatrix matrix, SparseMatrix cols) {
+            int rows = matrix.rows();
+            this.matrix = matrix;
+            addedColumns = new int[rows][];
+            numOfAddedColumns = new int[rows];
+            counts = new int[rows];
+            means = new double[rows];
+            sumsOfSquares = new double[rows];
+            rowPairs = new int[rows][];
+            numOfRowPairs = new int[rows];
+            dirty = new boolean[rows];
+            neighbourIds = new int[rows][];
+            neighbourSims = new double[rows][];
+            Arrays.fill(dirty, true);
+            for (int i = 0; i < rows; i++) {
+                computeStatistics(i);
+            }
+            // Every pair of rows in a column shares that column.
+            long expectedPairs = 0;
+            for (int c = 0; c < cols.rows(); c++) {
+                expectedPairs += (long) cols.rowLength(c) * (cols.rowLength(c) - 1) / 2;
+            }
+            int capacity = (int) Math.min(expectedPairs, 1 << 24);
+            pairs = new LongIndexMap(capacity);
+            sxy = new double[Math.max(capacity, 16)];
+            sx = new double[sxy.length];
+            sy = new double[sxy.length];
+            n = new int[sxy.length];
+            for (int c = 0; c < cols.rows(); c++) {
+                for (int e = cols.rowStart(c); e < cols.rowEnd(c); e++) {
+                    int x = cols.column(e);
+                    double valueX = cols.value(e);
+                    for (int f = e + 1; f < cols.rowEnd(c); f++) {
+                        int p = pair(x, cols.column(f));
+                        double valueY = cols.value(f);
+                        sxy[p] += valueX * valueY;
+                        sx[p] += valueX;
+                        sy[p] += valueY;
+                        n[p]++;
+                    }
+                }
+            }
+        }
+
+        // Current rating of row at col, 0 when there is none.
+        private double rating(int row, int col) {
+            if (overlay.size() > 0) {
+                int index = overlay.get(key(row, col));
+                if (index >= 0) return overlayValues[index];
+            }
+            return matrix.get(row, col);
+        }
+
+        // Index of pair (x, y) in either order, created with zero sums if the rows had no common column yet.
+        private int pair(int x, int y) {
+            int size = pairs.size();
+            int p = pairs.add(x < y ? key(x, y) : key(y, x));
+            if (p == size) {
+                if (p == sxy.length) {
+                    sxy = Arrays.copyOf(sxy, 2 * p);
+                    sx = Arrays.copyOf(sx, 2 * p);
+                    sy = Arrays.copyOf(sy, 2 * p);
+                    n = Arrays.copyOf(n, 2 * p);
+                }
+                rowPairs[x] = append(rowPairs[x], numOfRowPairs[x]++, p);
+                rowPairs[y] = append(rowPairs[y], numOfRowPairs[y]++, p);
+            }
+            return p;
+        }
+
+        // The other row of pair p.
+        private int partner(int p, int row) {
+            long key = pairs.keyAt(p);
+            int x = (int) (key >>> Integer.SIZE);
+            return x == row ? (int) key : x;
+        }
+
+        // Applies rating value (replacing old, 0 when new) of row at column col;
+        // columns is the other orientation, whose row col lists the rows that rated col.
+        private void update(int row, int col, double value, double old, Side columns) {
+            double delta = value - old;
+            SparseMatrix raters = columns.matrix;
+            for (int e = raters.rowStart(col); e < raters.rowEnd(col); e++) {
+                updatePair(row, raters.column(e), col, value, old, delta);
+            }
+            for (int a = 0; a < columns.numOfAddedColumns[col]; a++) {
+                updatePair(row, columns.addedColumns[col][a], col, value, old, delta);
+            }
+            int index = overlay.add(key(row, col));
+            if (index == overlayValues.length) {
+                overlayValues = Arrays.copyOf(overlayValues, 2 * index);
+            }
+            overlayValues[index] = value;
+            if (old == 0) {
+                addedColumns[row] = append(addedColumns[row], numOfAddedColumns[row]++, col);
+            }
+            computeStatistics(row);
+            // The mean and norm of row changed, so did its similarity with every partner.
+            dirty[row] = true;
+            for (int q = 0; q < numOfRowPairs[row]; q++) {
+                dirty[partner(rowPairs[row][q], row)] = true;
+            }
+        }
+
+        private void updatePair(int row, int other, int col, double value, double old, double delta) {
+            if (other == row) return;
+            double otherValue = rating(other, col);
+            int p = pair(row, other);
+            sxy[p] += delta * otherValue;
+            if (row < other) {
+                sx[p] += delta;
+                if (old == 0) sy[p] += otherValue;
+            } else {
+                sy[p] += delta;
+                if (old == 0) sx[p] += otherValue;
+            }
+            if (old == 0) n[p]++;
+        }
+
+        // Mean and centred sum of squares of row in two passes over its ratings, the way the batch path
+        // centres a row, so a constant row gets the same (normally zero) norm there and here.
+        private void computeStatistics(int row) {
+            int count = matrix.rowLength(row) + numOfAddedColumns[row];
+            double sum = 0.0;
+            for (int e = matrix.rowStart(row); e < matrix.rowEnd(row); e++) {
+                sum += rating(row, matrix.column(e));
+            }
+            for (int a = 0; a < numOfAddedColumns[row]; a++) {
+                sum += rating(row, addedColumns[row][a]);
+            }
+            double mean = count == 0 ? 0.0 : sum / count;
+            double q = 0.0;
+            for (int e = matrix.rowStart(row); e < matrix.rowEnd(row); e++) {
+                double centred = rating(row, matrix.column(e)) - mean;
+                q += centred * centred;
+            }
+            for (int a = 0; a < numOfAddedColumns[row]; a++) {
+                double centred = rating(row, addedColumns[row][a]) - mean;
+                q += centred * centred;
+            }
+            counts[row] = count;
+            means[row] = mean;
+            sumsOfSquares[row] = q;
+        }
+
+        private double similarity(int p) {
+            long key = pairs.keyAt(p);
+            int x = (int) (key >>> Integer.SIZE);
+            int y = (int) key;
+            if (counts[x] == 0 || counts[y] == 0 || sumsOfSquares[x] == 0 || sumsOfSquares[y] == 0) {
+                return Double.NaN;
+            }
+            double nominator = sxy[p] - means[y] * sx[p] - means[x] * sy[p] + n[p] * means[x] * means[y];
+            return nominator / (Math.sqrt(sumsOfSquares[x]) * Math.sqrt(sumsOfSquares[y]));
+        }
+
+        private void refresh(int row) {
+            int size = numOfRowPairs[row];
+            int[] ids = new int[size];
+            double[] sims = new double[size];
+            int length = 0;
+            for (int q = 0; q < size; q++) {
+                int p = rowPairs[row][q];
+                double value = similarity(p);
+                if (value > 0 && value != 1) {
+                    ids[length] = partner(p, row);
+                    sims[length++] = value;
+                }
+            }
+            NeighbourIndex.sort(ids, sims, 0, length);
+            neighbourIds[row] = Arrays.copyOf(ids, length);
+            neighbourSims[row] = Arrays.copyOf(sims, length);
+            dirty[row] = false;
+        }
+
+        // Same walk as CF.recommendScore over the live neighbour list of row i.
+        private double score(int i, int j, int k) {
+            if (dirty[i]) {
+                refresh(i);
+            }
+            int[] ids = neighbourIds[i];
+            double[] sims = neighbourSims[i];
+            double nominator = 0.0;
+            double denominator = 0.0;
+            for (int e = 0; e < ids.length; e++) {
+                double r = rating(ids[e], j);
+                if (r != 0) {
+                    double sim = sims[e];
+                    nominator += r * sim;
+                    denominator += sim;
+                    k--;
+                }
+                if (k == 0) break;
+            }
+            return nominator / denominator;
+        }
+    }
+
+}
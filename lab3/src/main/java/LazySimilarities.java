@@ -0,0 +1,58 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Neighbour rows computed the first time a query needs them and kept in an LRU cache.
+// The cache is bounded by the total number of neighbour entries it holds (12 bytes each),
+// so a few long rows cannot push the memory use past the budget. Not thread-safe.
+public final class LazySimilarities {
+
+    private final SimilarityEngine engine;
+    private final int top;
+    private final long maxEntries;
+    private final LinkedHashMap<Integer, NeighbourIndex> rows = new LinkedHashMap<>(16, 0.75f, true);
+    private long entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public LazySimilarities(SimilarityEngine engine, int top, long maxEntries) {
+        this.engine = engine;
+        this.top = top;
+        this.maxEntries = maxEntries;
+    }
+
+    // Neighbours of row i as the single row 0 of an index.
+    public NeighbourIndex row(int i) {
+        NeighbourIndex row = rows.get(i);
+        if (row != null) {
+            hits++;
+            return row;
+        }
+        misses++;
+        row = engine.row(i, top);
+        rows.put(i, row);
+        entries += row.size();
+        // Evict the least recently used rows, but always keep the one just computed.
+        Iterator<Map.Entry<Integer, NeighbourIndex>> eldest = rows.entrySet().iterator();
+        while (entries > maxEntries && rows.size() > 1) {
+            entries -= eldest.next().getValue().size();
+            eldest.remove();
+            evictions++;
+        }
+        return row;
+    }
+
+    // Neighbours of row i computed without the cache; safe to call from several threads.
+    public NeighbourIndex compute(int i) {
+        return engine.row(i, top);
+    }
+
+    public String stats() {
+        long lookups = hits + misses;
+        return String.format(Locale.US, "Row cache: rows=%d, entries=%d, hits=%d, misses=%d, evictions=%d, hit rate=%.2f%%",
+                rows.size(), entries, hits, misses, evictions, lookups == 0 ? 0.0 : 100.0 * hits / lookups);
+    }
+
+}
@@ -0,0 +1,79 @@
+import java.util.Arrays;
+
+// Open-addressing (linear probing) map from long keys to dense indexes 0, 1, 2, ... in insertion order,
+// so the values themselves can live in parallel primitive arrays owned by the caller.
+public final class LongIndexMap {
+
+    // Index + 1 of the key in every slot, 0 for an empty slot.
+    private int[] table;
+    private long[] keys;
+    private int size;
+
+    public LongIndexMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        table = new int[capacity];
+        keys = new long[Math.max(expectedSize, 8)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Index of key, -1 if absent.
+    public int get(long key) {
+        int m = table.length - 1;
+        int slot = mix(key) & m;
+        while (table[slot] != 0) {
+            if (keys[table[slot] - 1] == key) {
+                return table[slot] - 1;
+            }
+            slot = (slot + 1) & m;
+        }
+        return -1;
+    }
+
+    // Index of key, which gets the next free index size() - 1 if it was absent.
+    public int add(long key) {
+        int m = table.length - 1;
+        int slot = mix(key) & m;
+        while (table[slot] != 0) {
+            if (keys[table[slot] - 1] == key) {
+                return table[slot] - 1;
+            }
+            slot = (slot + 1) & m;
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, 2 * size);
+        }
+        keys[size] = key;
+        table[slot] = ++size;
+        if (size * 4 > table.length * 3) {
+            rehash();
+        }
+        return size - 1;
+    }
+
+    public long keyAt(int index) {
+        return keys[index];
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        int m = table.length - 1;
+        for (int index = 0; index < size; index++) {
+            int slot = mix(keys[index]) & m;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & m;
+            }
+            table[slot] = index + 1;
+        }
+    }
+
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+}
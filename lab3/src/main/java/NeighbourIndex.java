@@ -0,0 +1,279 @@
+import java.util.Arrays;
+
+// Similar rows of every row, stored like a CSR matrix: the neighbours of row r are the entries
+// start(r) .. end(r) - 1, sorted by decreasing similarity and then by increasing row id.
+// A query walks its row from the front, so it never looks at the other rows' similarities.
+public final class NeighbourIndex {
+
+    private final int[] rowStarts;
+    private final int[] neighbours;
+    private final double[] similarities;
+
+    private NeighbourIndex(int[] rowStarts, int[] neighbours, double[] similarities) {
+        this.rowStarts = rowStarts;
+        this.neighbours = neighbours;
+        this.similarities = similarities;
+    }
+
+    // Index of a single row 0 with the given neighbours, already in neighbour order.
+    public static NeighbourIndex ofRow(int[] neighbours, double[] similarities) {
+        return new NeighbourIndex(new int[]{0, neighbours.length}, neighbours, similarities);
+    }
+
+    public int rows() {
+        return rowStarts.length - 1;
+    }
+
+    // Number of stored neighbour entries over all rows.
+    public int size() {
+        return rowStarts[rows()];
+    }
+
+    public int start(int row) {
+        return rowStarts[row];
+    }
+
+    public int end(int row) {
+        return rowStarts[row + 1];
+    }
+
+    public int neighbour(int entry) {
+        return neighbours[entry];
+    }
+
+    public double similarity(int entry) {
+        return similarities[entry];
+    }
+
+    // Collects symmetric similarities and sorts them into rows, keeping at most maxPerRow
+    // best neighbours of every row (all of them when maxPerRow <= 0).
+    // With a bound every row keeps a heap of its maxPerRow best neighbours while the similarities arrive,
+    // its worst one at the root, so the builder holds O(rows * maxPerRow) entries however many pairs are added;
+    // without one the pairs are buffered and sorted into rows by build().
+    // Parallel producers collect a block's pairs apart, in an unbounded builder of their own, and then hand it
+    // to the shared builder through addAll, which applies the bound.
+    public static final class Builder {
+
+        private final int rows;
+        private final int maxPerRow;
+        // Unbounded: buffered pairs.
+        private int[] from;
+        private int[] to;
+        private double[] values;
+        private int size;
+        // Bounded: heap of every row, allocated when the row gets its first neighbour.
+        private int[][] heapIds;
+        private double[][] heapSims;
+        private int[] heapSizes;
+        private int[] heapRows;
+        private int numOfHeaps;
+
+        public Builder(int rows, int maxPerRow) {
+            this.rows = rows;
+            this.maxPerRow = maxPerRow;
+            if (maxPerRow > 0) {
+                heapIds = new int[rows][];
+                heapSims = new double[rows][];
+                heapSizes = new int[rows];
+                heapRows = new int[16];
+            } else {
+                from = new int[16];
+                to = new int[16];
+                values = new double[16];
+            }
+        }
+
+        // Row j becomes a neighbour of row i and row i a neighbour of row j.
+        public void add(int i, int j, double similarity) {
+            if (maxPerRow > 0) {
+                offer(i, j, similarity);
+                offer(j, i, similarity);
+                return;
+            }
+            if (size == from.length) {
+                from = Arrays.copyOf(from, 2 * size);
+                to = Arrays.copyOf(to, 2 * size);
+                values = Arrays.copyOf(values, 2 * size);
+            }
+            from[size] = i;
+            to[size] = j;
+            values[size++] = similarity;
+        }
+
+        // Takes over the similarities collected by another builder, e.g. one per thread.
+        // A bounded builder can take over any builder, an unbounded one only unbounded builders.
+        public void addAll(Builder other) {
+            if (maxPerRow > 0) {
+                for (int h = 0; h < other.numOfHeaps; h++) {
+                    int row = other.heapRows[h];
+                    for (int e = 0; e < other.heapSizes[row]; e++) {
+                        offer(row, other.heapIds[row][e], other.heapSims[row][e]);
+                    }
+                }
+                for (int e = 0; e < other.size; e++) {
+                    add(other.from[e], other.to[e], other.values[e]);
+                }
+                return;
+            }
+            if (other.maxPerRow > 0) {
+                throw new IllegalArgumentException("An unbounded builder cannot take over a bounded one!");
+            }
+            if (size + other.size > from.length) {
+                int capacity = Math.max(2 * from.length, size + other.size);
+                from = Arrays.copyOf(from, capacity);
+                to = Arrays.copyOf(to, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            System.arraycopy(other.from, 0, from, size, other.size);
+            System.arraycopy(other.to, 0, to, size, other.size);
+            System.arraycopy(other.values, 0, values, size, other.size);
+            size += other.size;
+        }
+
+        public NeighbourIndex build() {
+            return maxPerRow > 0 ? buildFromHeaps() : buildFromPairs();
+        }
+
+        private NeighbourIndex buildFromHeaps() {
+            int[] rowStarts = new int[rows + 1];
+            for (int r = 0; r < rows; r++) {
+                rowStarts[r + 1] = rowStarts[r] + heapSizes[r];
+            }
+            int[] neighbours = new int[rowStarts[rows]];
+            double[] similarities = new double[rowStarts[rows]];
+            for (int r = 0; r < rows; r++) {
+                if (heapSizes[r] == 0) continue;
+                System.arraycopy(heapIds[r], 0, neighbours, rowStarts[r], heapSizes[r]);
+                System.arraycopy(heapSims[r], 0, similarities, rowStarts[r], heapSizes[r]);
+                sort(neighbours, similarities, rowStarts[r], rowStarts[r + 1]);
+            }
+            return new NeighbourIndex(rowStarts, neighbours, similarities);
+        }
+
+        private NeighbourIndex buildFromPairs() {
+            int[] starts = new int[rows + 1];
+            for (int e = 0; e < size; e++) {
+                starts[from[e] + 1]++;
+                starts[to[e] + 1]++;
+            }
+            for (int r = 0; r < rows; r++) {
+                starts[r + 1] += starts[r];
+            }
+            int[] next = Arrays.copyOf(starts, rows);
+            int[] neighbours = new int[2 * size];
+            double[] similarities = new double[2 * size];
+            for (int e = 0; e < size; e++) {
+                int p = next[from[e]]++;
+                neighbours[p] = to[e];
+                similarities[p] = values[e];
+                p = next[to[e]]++;
+                neighbours[p] = from[e];
+                similarities[p] = values[e];
+            }
+            for (int r = 0; r < rows; r++) {
+                sort(neighbours, similarities, starts[r], starts[r + 1]);
+            }
+            return new NeighbourIndex(starts, neighbours, similarities);
+        }
+
+        // Offers neighbour id to the heap of row: kept while the row has fewer than maxPerRow neighbours,
+        // otherwise only when it comes before the worst neighbour kept, which it then replaces.
+        private void offer(int row, int id, double similarity) {
+            int[] ids = heapIds[row];
+            double[] sims = heapSims[row];
+            int n = heapSizes[row];
+            if (ids == null) {
+                int capacity = Math.min(maxPerRow, 4);
+                heapIds[row] = ids = new int[capacity];
+                heapSims[row] = sims = new double[capacity];
+                if (numOfHeaps == heapRows.length) {
+                    heapRows = Arrays.copyOf(heapRows, 2 * numOfHeaps);
+                }
+                heapRows[numOfHeaps++] = row;
+            }
+            if (n < maxPerRow) {
+                if (n == ids.length) {
+                    int capacity = Math.min(maxPerRow, 2 * n);
+                    heapIds[row] = ids = Arrays.copyOf(ids, capacity);
+                    heapSims[row] = sims = Arrays.copyOf(sims, capacity);
+                }
+                // Sift up: a parent never comes before its children.
+                int p = n;
+                while (p > 0) {
+                    int parent = (p - 1) >>> 1;
+                    if (!precedes(sims[parent], ids[parent], similarity, id)) break;
+                    ids[p] = ids[parent];
+                    sims[p] = sims[parent];
+                    p = parent;
+                }
+                ids[p] = id;
+                sims[p] = similarity;
+                heapSizes[row] = n + 1;
+                return;
+            }
+            if (!precedes(similarity, id, sims[0], ids[0])) return;
+            // Sift down from the root, moving the later child up.
+            int p = 0;
+            while (true) {
+                int child = 2 * p + 1;
+                if (child >= n) break;
+                if (child + 1 < n && precedes(sims[child], ids[child], sims[child + 1], ids[child + 1])) {
+                    child++;
+                }
+                if (!precedes(similarity, id, sims[child], ids[child])) break;
+                ids[p] = ids[child];
+                sims[p] = sims[child];
+                p = child;
+            }
+            ids[p] = id;
+            sims[p] = similarity;
+        }
+    }
+
+    // Whether neighbour (sim1, id1) comes before (sim2, id2) in neighbour order.
+    private static boolean precedes(double sim1, int id1, double sim2, int id2) {
+        return sim1 > sim2 || (sim1 == sim2 && id1 < id2);
+    }
+
+    private static boolean before(int[] ids, double[] sims, int a, int b) {
+        return precedes(sims[a], ids[a], sims[b], ids[b]);
+    }
+
+    // Sorts the parallel arrays in [from, to) into neighbour order: quicksort, insertion sort for short ranges.
+    public static void sort(int[] ids, double[] sims, int from, int to) {
+        while (to - from > 16) {
+            int mid = (from + to) >>> 1;
+            swap(ids, sims, mid, to - 1);
+            int store = from;
+            for (int p = from; p < to - 1; p++) {
+                if (before(ids, sims, p, to - 1)) {
+                    swap(ids, sims, p, store++);
+                }
+            }
+            swap(ids, sims, store, to - 1);
+            // Recurse into the smaller part, loop on the larger one.
+            if (store - from < to - store - 1) {
+                sort(ids, sims, from, store);
+                from = store + 1;
+            } else {
+                sort(ids, sims, store + 1, to);
+                to = store;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            for (int j = i; j > from && before(ids, sims, j, j - 1); j--) {
+                swap(ids, sims, j, j - 1);
+            }
+        }
+    }
+
+    private static void swap(int[] ids, double[] sims, int a, int b) {
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        double sim = sims[a];
+        sims[a] = sims[b];
+        sims[b] = sim;
+    }
+
+}
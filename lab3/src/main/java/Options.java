@@ -0,0 +1,47 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Minimal command line parser: "--name value" pairs are options, everything else is positional.
+public final class Options {
+
+    private final Map<String, String> named = new HashMap<>();
+    private final List<String> positional = new ArrayList<>();
+
+    private Options() {
+    }
+
+    public static Options parse(String[] args) {
+        Options options = new Options();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--")) {
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value for option " + args[i] + "!");
+                }
+                options.named.put(args[i].substring(2), args[++i]);
+            } else {
+                options.positional.add(args[i]);
+            }
+        }
+        return options;
+    }
+
+    public int positionalCount() {
+        return positional.size();
+    }
+
+    public String positional(int index) {
+        return positional.get(index);
+    }
+
+    public String get(String name, String defaultValue) {
+        return named.getOrDefault(name, defaultValue);
+    }
+
+    public int getInt(String name, int defaultValue) {
+        String value = named.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+}
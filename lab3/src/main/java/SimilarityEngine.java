@@ -0,0 +1,312 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Pearson (centred cosine) similarities between the rows of a sparse utility matrix.
+// Rows are centred and their norms computed once, and the upper triangle of row pairs is split
+// into square tiles that fork/join tasks compute in parallel.
+// Within a tile, a row's dot products with the tile's rows are accumulated through the columns the row rated,
+// in increasing column order, so every value is bit-identical to a serial dense loop.
+// The engine keeps the centred values once in row order, over the structure of the given matrix, and once
+// in column order, over the structure of its transpose, which callers already hold for the other orientation.
+// With float values both copies are floats, which halves
+// the value bytes the accumulation loops stream; products and sums stay in double, so the results differ
+// from the double path by float rounding of the entries only.
+public final class SimilarityEngine {
+
+    // Rows per tile side; a tile's accumulators stay in cache.
+    private static final int TILE = 1024;
+
+    // Row structure; its values are the uncentred ratings and are not read here.
+    private final SparseMatrix matrix;
+    // Column structure: row c of the transpose lists the rows that rated column c, in increasing order.
+    private final SparseMatrix columns;
+    // Centred values parallel to the row and column entries, in double or in float; the other pair is null.
+    private final double[] rowValues;
+    private final double[] colValues;
+    private final float[] rowFloats;
+    private final float[] colFloats;
+    private final double[] norms;
+    // Accumulators of row(), one set per calling thread.
+    private final ThreadLocal<Scratch> scratch;
+
+    // transpose must be matrix.transpose().
+    public SimilarityEngine(SparseMatrix matrix, SparseMatrix transpose, boolean floatValues) {
+        if (transpose.rows() != matrix.cols() || transpose.size() != matrix.size()) {
+            throw new IllegalArgumentException("Not the transpose of the matrix!");
+        }
+        this.matrix = matrix;
+        this.columns = transpose;
+        int rows = matrix.rows();
+        // Calculate means in every row.
+        double[] meanRows = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            int counter = matrix.rowLength(i);
+            double sum = 0;
+            for (int e = matrix.rowStart(i); e < matrix.rowEnd(i); e++) {
+                sum += matrix.value(e);
+            }
+            if (counter != 0) meanRows[i] = sum / counter;
+        }
+        // Normalize every row, in both orders.
+        rowValues = floatValues ? null : new double[matrix.size()];
+        colValues = floatValues ? null : new double[matrix.size()];
+        rowFloats = floatValues ? new float[matrix.size()] : null;
+        colFloats = floatValues ? new float[matrix.size()] : null;
+        for (int i = 0; i < rows; i++) {
+            for (int e = matrix.rowStart(i); e < matrix.rowEnd(i); e++) {
+                double value = matrix.value(e) - meanRows[i];
+                if (floatValues) {
+                    rowFloats[e] = (float) value;
+                } else {
+                    rowValues[e] = value;
+                }
+            }
+        }
+        for (int f = 0; f < transpose.size(); f++) {
+            double value = transpose.value(f) - meanRows[transpose.column(f)];
+            if (floatValues) {
+                colFloats[f] = (float) value;
+            } else {
+                colValues[f] = value;
+            }
+        }
+        // Calculate the norm of every row from the values the dot products use.
+        norms = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            double norm = 0.0;
+            for (int e = matrix.rowStart(i); e < matrix.rowEnd(i); e++) {
+                double value = value(e);
+                norm += value * value;
+            }
+            norms[i] = Math.sqrt(norm);
+        }
+        scratch = ThreadLocal.withInitial(() -> new Scratch(rows));
+    }
+
+    public int rows() {
+        return matrix.rows();
+    }
+
+    // Mean-centred row i is made of the entries rowStart(i) .. rowEnd(i) - 1, each with a column and a value.
+    public int rowStart(int i) {
+        return matrix.rowStart(i);
+    }
+
+    public int rowEnd(int i) {
+        return matrix.rowEnd(i);
+    }
+
+    public int column(int entry) {
+        return matrix.column(entry);
+    }
+
+    // Centred value of the entry, in the precision the engine keeps.
+    public double value(int entry) {
+        return rowFloats != null ? rowFloats[entry] : rowValues[entry];
+    }
+
+    public double norm(int i) {
+        return norms[i];
+    }
+
+    // Similarity of rows i and j by merging their columns, equal to the value neighbours() computes.
+    public double similarity(int i, int j) {
+        double nominator = 0.0;
+        int e = matrix.rowStart(i);
+        int f = matrix.rowStart(j);
+        while (e < matrix.rowEnd(i) && f < matrix.rowEnd(j)) {
+            int c1 = matrix.column(e);
+            int c2 = matrix.column(f);
+            if (c1 < c2) {
+                e++;
+            } else if (c1 > c2) {
+                f++;
+            } else {
+                nominator += value(e++) * value(f++);
+            }
+        }
+        return nominator / (norms[i] * norms[j]);
+    }
+
+    // Index of the similarities a query can use: positive and not exactly 1, as the original CF required.
+    // Only pairs of rows with a common column can be positive, so the other pairs are never evaluated.
+    public NeighbourIndex neighbours(int top, int threads) {
+        int tiles = (rows() + TILE - 1) / TILE;
+        List<int[]> work = new ArrayList<>(tiles * (tiles + 1) / 2);
+        for (int ti = 0; ti < tiles; ti++) {
+            for (int tj = ti; tj < tiles; tj++) {
+                work.add(new int[]{ti * TILE, tj * TILE});
+            }
+        }
+        NeighbourIndex.Builder similarities = new NeighbourIndex.Builder(rows(), top);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new Tiles(work, 0, work.size(), similarities));
+        } finally {
+            pool.shutdown();
+        }
+        return similarities.build();
+    }
+
+    // Usable neighbours of row i alone, against all other rows; the values equal those of neighbours().
+    // Safe to call from several threads.
+    public NeighbourIndex row(int i, int top) {
+        Scratch s = scratch.get();
+        double[] nominators = s.nominators;
+        int[] touched = s.touched;
+        boolean[] isTouched = s.isTouched;
+        int nTouched = 0;
+        for (int e = matrix.rowStart(i); e < matrix.rowEnd(i); e++) {
+            int col = matrix.column(e);
+            nTouched = scatter(value(e), col, columns.rowStart(col), rows(), 0,
+                    nominators, touched, isTouched, nTouched);
+        }
+        int[] ids = new int[nTouched];
+        double[] sims = new double[nTouched];
+        int size = 0;
+        for (int t = 0; t < nTouched; t++) {
+            int j = touched[t];
+            if (j == i) {
+                nominators[j] = 0.0;
+                isTouched[j] = false;
+                continue;
+            }
+            double value = nominators[j] / (norms[i] * norms[j]);
+            if (value > 0 && value != 1) {
+                ids[size] = j;
+                sims[size++] = value;
+            }
+            nominators[j] = 0.0;
+            isTouched[j] = false;
+        }
+        NeighbourIndex.sort(ids, sims, 0, size);
+        if (top > 0) {
+            size = Math.min(size, top);
+        }
+        return NeighbourIndex.ofRow(Arrays.copyOf(ids, size), Arrays.copyOf(sims, size));
+    }
+
+    // Adds the usable similarities of rows [i0, i0 + TILE) with the later rows in [j0, j0 + TILE).
+    private void computeTile(int i0, int j0, double[] nominators, int[] touched, boolean[] isTouched,
+                             NeighbourIndex.Builder similarities) {
+        int iEnd = Math.min(rows(), i0 + TILE);
+        int jEnd = Math.min(rows(), j0 + TILE);
+        for (int i = i0; i < iEnd; i++) {
+            int jStart = Math.max(j0, i + 1);
+            if (jStart >= jEnd) continue;
+            int nTouched = 0;
+            for (int e = matrix.rowStart(i); e < matrix.rowEnd(i); e++) {
+                int col = matrix.column(e);
+                nTouched = scatter(value(e), col, lowerBound(col, jStart), jEnd, j0,
+                        nominators, touched, isTouched, nTouched);
+            }
+            for (int t = 0; t < nTouched; t++) {
+                int j = touched[t];
+                double value = nominators[j - j0] / (norms[i] * norms[j]);
+                if (value > 0 && value != 1) {
+                    similarities.add(i, j, value);
+                }
+                nominators[j - j0] = 0.0;
+                isTouched[j - j0] = false;
+            }
+        }
+    }
+
+    // Adds value1 times the entries of column col, from entry start on up to row jEnd, to the accumulators
+    // of their rows (offset by j0); returns the new number of touched rows.
+    private int scatter(double value1, int col, int start, int jEnd, int j0,
+                        double[] nominators, int[] touched, boolean[] isTouched, int nTouched) {
+        int end = columns.rowEnd(col);
+        if (colFloats != null) {
+            for (int f = start; f < end; f++) {
+                int j = columns.column(f);
+                if (j >= jEnd) break;
+                if (!isTouched[j - j0]) {
+                    isTouched[j - j0] = true;
+                    touched[nTouched++] = j;
+                }
+                nominators[j - j0] += value1 * colFloats[f];
+            }
+            return nTouched;
+        }
+        for (int f = start; f < end; f++) {
+            int j = columns.column(f);
+            if (j >= jEnd) break;
+            if (!isTouched[j - j0]) {
+                isTouched[j - j0] = true;
+                touched[nTouched++] = j;
+            }
+            nominators[j - j0] += value1 * colValues[f];
+        }
+        return nTouched;
+    }
+
+    // First entry of column col whose row is >= row.
+    private int lowerBound(int col, int row) {
+        int low = columns.rowStart(col);
+        int high = columns.rowEnd(col);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (columns.column(mid) < row) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static final class Scratch {
+
+        private final double[] nominators;
+        private final int[] touched;
+        private final boolean[] isTouched;
+
+        private Scratch(int rows) {
+            nominators = new double[rows];
+            touched = new int[rows];
+            isTouched = new boolean[rows];
+        }
+    }
+
+    // Splits the tile list in halves until a single tile is left.
+    // A tile's pairs are merged into the shared builder as described at NeighbourIndex.Builder.
+    private final class Tiles extends RecursiveAction {
+
+        private final List<int[]> work;
+        private final int from;
+        private final int to;
+        private final NeighbourIndex.Builder similarities;
+
+        private Tiles(List<int[]> work, int from, int to, NeighbourIndex.Builder similarities) {
+            this.work = work;
+            this.from = from;
+            this.to = to;
+            this.similarities = similarities;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Tiles(work, from, mid, similarities), new Tiles(work, mid, to, similarities));
+                return;
+            }
+            double[] nominators = new double[TILE];
+            int[] touched = new int[TILE];
+            boolean[] isTouched = new boolean[TILE];
+            NeighbourIndex.Builder part = new NeighbourIndex.Builder(rows(), 0);
+            for (int w = from; w < to; w++) {
+                int[] tile = work.get(w);
+                computeTile(tile[0], tile[1], nominators, touched, isTouched, part);
+            }
+            synchronized (similarities) {
+                similarities.addAll(part);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+import java.util.Arrays;
+
+// Compressed sparse row (CSR) matrix of doubles, missing entries read as 0.
+// Row r holds the entries rowStart(r) .. rowEnd(r) - 1, with increasing columns.
+// The transpose of a CSR matrix is the compressed sparse column (CSC) form of the original,
+// so both orientations of the utility matrix come from one parsed copy.
+public final class SparseMatrix {
+
+    private final int rows;
+    private final int cols;
+    private final int[] rowStarts;
+    private final int[] columns;
+    private final double[] values;
+
+    private SparseMatrix(int rows, int cols, int[] rowStarts, int[] columns, double[] values) {
+        this.rows = rows;
+        this.cols = cols;
+        this.rowStarts = rowStarts;
+        this.columns = columns;
+        this.values = values;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int cols() {
+        return cols;
+    }
+
+    // Number of stored entries.
+    public int size() {
+        return rowStarts[rows];
+    }
+
+    public int rowStart(int row) {
+        return rowStarts[row];
+    }
+
+    public int rowEnd(int row) {
+        return rowStarts[row + 1];
+    }
+
+    public int rowLength(int row) {
+        return rowStarts[row + 1] - rowStarts[row];
+    }
+
+    public int column(int entry) {
+        return columns[entry];
+    }
+
+    public double value(int entry) {
+        return values[entry];
+    }
+
+    // Value at (row, col), 0 when there is no entry.
+    public double get(int row, int col) {
+        int entry = Arrays.binarySearch(columns, rowStarts[row], rowStarts[row + 1], col);
+        return entry >= 0 ? values[entry] : 0.0;
+    }
+
+    // Matrix with the same non-zero pattern and new entry values, sharing the structure arrays.
+    public SparseMatrix withValues(double[] newValues) {
+        if (newValues.length != size()) {
+            throw new IllegalArgumentException("Expected " + size() + " values, got " + newValues.length + "!");
+        }
+        return new SparseMatrix(rows, cols, rowStarts, columns, newValues);
+    }
+
+    // Counting sort by column; rows stay in increasing order within every column.
+    public SparseMatrix transpose() {
+        int[] starts = new int[cols + 1];
+        for (int entry = 0; entry < size(); entry++) {
+            starts[columns[entry] + 1]++;
+        }
+        for (int c = 0; c < cols; c++) {
+            starts[c + 1] += starts[c];
+        }
+        int[] next = Arrays.copyOf(starts, cols);
+        int[] transposedColumns = new int[size()];
+        double[] transposedValues = new double[size()];
+        for (int r = 0; r < rows; r++) {
+            for (int entry = rowStarts[r]; entry < rowStarts[r + 1]; entry++) {
+                int position = next[columns[entry]]++;
+                transposedColumns[position] = r;
+                transposedValues[position] = values[entry];
+            }
+        }
+        return new SparseMatrix(cols, rows, starts, transposedColumns, transposedValues);
+    }
+
+    // Builds a matrix row by row; within a row columns must be added in increasing order.
+    public static final class Builder {
+
+        private final int cols;
+        private int[] rowStarts = new int[16];
+        private int[] columns = new int[16];
+        private double[] values = new double[16];
+        private int rows;
+        private int size;
+
+        public Builder(int cols) {
+            this.cols = cols;
+        }
+
+        // Zero values are treated as missing and skipped.
+        public Builder add(int col, double value) {
+            if (col < 0 || col >= cols) {
+                throw new IndexOutOfBoundsException("Column " + col + " is outside of " + cols + " columns!");
+            }
+            if (value == 0) return this;
+            if (size > rowStarts[rows] && columns[size - 1] >= col) {
+                throw new IllegalArgumentException("Columns of a row must be increasing!");
+            }
+            if (size == columns.length) {
+                columns = Arrays.copyOf(columns, 2 * size);
+                values = Arrays.copyOf(values, 2 * size);
+            }
+            columns[size] = col;
+            values[size++] = value;
+            return this;
+        }
+
+        public Builder endRow() {
+            if (rows + 2 > rowStarts.length) {
+                rowStarts = Arrays.copyOf(rowStarts, 2 * rowStarts.length);
+            }
+            rowStarts[++rows] = size;
+            return this;
+        }
+
+        public SparseMatrix build() {
+            return new SparseMatrix(rows, cols, Arrays.copyOf(rowStarts, rows + 1),
+                    Arrays.copyOf(columns, size), Arrays.copyOf(values, size));
+        }
+    }
+
+}